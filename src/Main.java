@@ -1,21 +1,427 @@
+import counters.CounterBatch;
 import counters.CounterController;
+import counters.CounterDaemon;
+import counters.CounterExecutor;
+import io.Log;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 public class Main
 {
+    public static final String USAGE = "<project_path|archive> <output_path> [options]\n"
+            + "   or: --daemon=<socket> [--clients=<n>] [--projects=<n>] [options]\n"
+            + "   or: --batch=<manifest> [options]\t(one project_path TAB output_path per line)\n"
+            + "Options:\n"
+            + "\t--threads=<n>\t\t\tNumber of threads used to measure the classes (default 1)\n"
+            + "\t--executor=<fork-join|virtual>\tExecutor used when threads > 1 (default fork-join)\n"
+            + "\t--cache=<file>\t\t\tReuse the metrics of the unchanged classes (saved in file)\n"
+            + "\t--charset=<name>\t\tCharset of the source files (default: detected)\n"
+            + "\t--watch\t\t\t\tKeep the csv files up to date while the project changes\n"
+            + "\t--history=<revisions>\t\tMeasure each commit of the git history (ex: HEAD, v1.0..main)\n"
+            + "\t--history-format=<commits|long>\tA folder per commit, or one long table (default commits)\n"
+            + "\t--shards=<n>\t\t\tMeasure the project in n shards, each one by a separate process, then merge them\n"
+            + "\t--shard=<i>/<n>\t\t\tOnly measure the shard i (from 0) of n, into a partial result\n"
+            + "\t--merge=<n>\t\t\tMerge the partial results of the n shards into the csv files\n"
+            + "\t--binary[=gzip]\t\t\tAlso write the measures in a binary columnar file (metrics.bin)\n"
+            + "\t--report=<file>\t\t\tWrite the statistics of the run in a JSON report\n"
+            + "\t--top=<n>\t\t\tNumber of slowest classes in the report (default 10)\n"
+            + "\t--time-budget=<ms>\t\tTime allowed to count a class before the degraded mode (default 10000, 0: no limit)\n"
+            + "\t--stack=<size>\t\t\tStack size of the threads that count the classes (ex: 512m)\n"
+            + "\t--stream-above=<size>\t\tRead the larger files in streaming mode (default 16m)\n"
+            + "\t--include=<glob>\t\tOnly measure the files that match a glob (can be repeated)\n"
+            + "\t--exclude=<glob>\t\tSkip the files and folders that match a glob (can be repeated, ex: build/)\n"
+            + "\t--gitignore\t\t\tSkip the files and folders ignored by the .gitignore files\n"
+            + "\t--eta\t\t\t\tWith one thread, count the classes first to show the remaining time\n"
+            + "\t--quiet\t\t\t\tOnly write the errors\n"
+            + "\t--verbose\t\t\tWrite each folder and class visited";
+
     public static void main(String[] args) throws IOException
     {
-        if(args.length != 2)
+        if(args.length >= 1 && args[0].startsWith("--daemon="))
+        {
+            daemon(args);
+            return;
+        }
+        else if(args.length >= 1 && args[0].startsWith("--batch="))
+        {
+            batch(args);
+            return;
+        }
+
+        if(args.length < 2)
         {
             throw new IllegalArgumentException("Wrong number of argument. " +
-                    "Should be: <project_path> <output_path>");
+                    "Should be: " + USAGE);
         }
 
         String projectPath = args[0];
         String outputPath = args[1];
 
         CounterController counter = new CounterController(projectPath, outputPath);
-        counter.count();
+        boolean isWatching = false;
+        String revisions = null;
+        int shards = 0;
+        int mergedShards = 0;
+        List<String> workerOptions = new ArrayList<>();     //Options given to the process of each shard
+        for(int i = 2; i < args.length; i++)
+        {
+            if(args[i].equals("--watch"))
+            {
+                isWatching = true;
+            }
+            else if(args[i].startsWith("--history="))
+            {
+                revisions = args[i].substring("--history=".length());
+            }
+            else if(args[i].startsWith("--shards="))
+            {
+                shards = parseShards(args[i].substring("--shards=".length()));
+            }
+            else if(args[i].startsWith("--merge="))
+            {
+                mergedShards = parseShards(args[i].substring("--merge=".length()));
+            }
+            else
+            {
+                parseOption(counter, args[i]);
+
+                //The cache, the report and the binary file are written by the merge
+                if(!args[i].startsWith("--cache=") && !args[i].startsWith("--report=")
+                        && !args[i].startsWith("--binary"))
+                {
+                    workerOptions.add(args[i]);
+                }
+            }
+        }
+
+        try
+        {
+            if(shards > 0)
+            {
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(Main.class.getName());
+                command.add(projectPath);
+                command.add(outputPath);
+                command.addAll(workerOptions);
+
+                int count = shards;
+                counter.countSharded(shards, shard -> {
+                    List<String> worker = new ArrayList<>(command);
+                    worker.add("--shard=" + shard + "/" + count);
+                    return worker;
+                });
+            }
+            else if(mergedShards > 0)
+            {
+                counter.merge(mergedShards);
+            }
+            else if(revisions != null)
+            {
+                counter.countHistory(revisions);
+            }
+            else if(isWatching)
+            {
+                counter.watch();
+            }
+            else
+            {
+                counter.count();
+            }
+        }
+        finally
+        {
+            Log.flush();
+        }
+    }
+
+    /**
+     * Serve the requests on a Unix domain socket (see {@link CounterDaemon}),
+     * with the options of the command line.
+     *
+     * @param args The arguments (--daemon=socket first)
+     * @throws IOException If the socket can't be opened
+     */
+    private static void daemon(String[] args) throws IOException
+    {
+        String socket = args[0].substring("--daemon=".length());
+        int clients = Runtime.getRuntime().availableProcessors();
+        int projects = CounterDaemon.DEFAULT_MAX_PROJECTS;
+        List<String> options = new ArrayList<>();
+        for(int i = 1; i < args.length; i++)
+        {
+            if(args[i].startsWith("--clients="))
+            {
+                try
+                {
+                    clients = Integer.parseInt(args[i].substring("--clients=".length()));
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Invalid number of clients: " + args[i]);
+                }
+            }
+            else if(args[i].startsWith("--projects="))
+            {
+                try
+                {
+                    projects = Integer.parseInt(args[i].substring("--projects=".length()));
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Invalid number of projects: " + args[i]);
+                }
+            }
+            else
+            {
+                //Check the option now, instead of at the first request
+                parseOption(new CounterController(".", "."), args[i]);
+                options.add(args[i]);
+            }
+        }
+
+        try(CounterDaemon daemon = new CounterDaemon(Paths.get(socket), controller -> {
+            for(String option : options)
+            {
+                parseOption(controller, option);
+            }
+        }, clients))
+        {
+            daemon.setMaxProjects(projects);
+            daemon.serve();
+        }
+        finally
+        {
+            Log.flush();
+        }
+    }
+
+    /**
+     * Measure every project of a manifest (see {@link CounterBatch}),
+     * with the options of the command line.
+     *
+     * @param args The arguments (--batch=manifest first)
+     * @throws IOException If the manifest can't be read, or if projects failed
+     */
+    private static void batch(String[] args) throws IOException
+    {
+        String manifest = args[0].substring("--batch=".length());
+        List<String> options = new ArrayList<>();
+        for(int i = 1; i < args.length; i++)
+        {
+            //Check the option now, instead of at the first project
+            parseOption(new CounterController(".", "."), args[i]);
+            options.add(args[i]);
+        }
+
+        try
+        {
+            CounterBatch batch = new CounterBatch(Paths.get(manifest), controller -> {
+                for(String option : options)
+                {
+                    parseOption(controller, option);
+                }
+            });
+
+            int failed = batch.count();
+            if(failed > 0)
+            {
+                throw new IOException(failed + " of " + batch.getProjects() + " projects failed");
+            }
+        }
+        finally
+        {
+            Log.flush();
+        }
+    }
+
+    /**
+     * Apply an option (--name=value) to the controller.
+     *
+     * @param counter The controller
+     * @param option The option
+     */
+    private static void parseOption(CounterController counter, String option)
+    {
+        int separator = option.indexOf('=');
+        String name = separator == -1 ? option : option.substring(0, separator);
+        String value = separator == -1 ? "" : option.substring(separator + 1);
+
+        switch(name)
+        {
+            case "--threads":
+                try
+                {
+                    counter.setThreads(Integer.parseInt(value));
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Invalid number of threads: " + value);
+                }
+                break;
+            case "--executor":
+                counter.setExecutor(CounterExecutor.fromName(value));
+                break;
+            case "--cache":
+                counter.setCachePath(value);
+                break;
+            case "--charset":
+                try
+                {
+                    counter.setCharset(Charset.forName(value));
+                }
+                catch(IllegalArgumentException e)
+                {
+                    throw new IllegalArgumentException("Unknown charset " + value);
+                }
+                break;
+            case "--eta":
+                counter.setProgressTotal(true);
+                break;
+            case "--quiet":
+                Log.setLevel(Log.Level.QUIET);
+                break;
+            case "--verbose":
+                Log.setLevel(Log.Level.VERBOSE);
+                break;
+            case "--report":
+                counter.setReportPath(value);
+                break;
+            case "--top":
+                try
+                {
+                    counter.setTopFiles(Integer.parseInt(value));
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Invalid number of classes: " + value);
+                }
+                break;
+            case "--shard":
+                int slash = value.indexOf('/');
+                if(slash == -1)
+                {
+                    throw new IllegalArgumentException("Invalid shard: " + value + ". Should be: <i>/<n>");
+                }
+                try
+                {
+                    counter.setShard(Integer.parseInt(value.substring(0, slash)),
+                            Integer.parseInt(value.substring(slash + 1)));
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Invalid shard: " + value + ". Should be: <i>/<n>");
+                }
+                break;
+            case "--include":
+                counter.getPathFilter().addInclude(value);
+                break;
+            case "--exclude":
+                counter.getPathFilter().addExclude(value);
+                break;
+            case "--gitignore":
+                counter.getPathFilter().setGitIgnore(true);
+                break;
+            case "--time-budget":
+                try
+                {
+                    counter.setTimeBudget(Long.parseLong(value));
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Invalid time budget: " + value);
+                }
+                break;
+            case "--stack":
+                counter.setStackSize(parseSize(value));
+                break;
+            case "--stream-above":
+                counter.setStreamingSize(parseSize(value));
+                break;
+            case "--binary":
+                if(!value.isEmpty() && !value.equals("gzip"))
+                {
+                    throw new IllegalArgumentException("Unknown binary format " + value);
+                }
+                counter.setBinaryOutput(value.isEmpty() ? CounterController.BinaryOutput.RAW
+                        : CounterController.BinaryOutput.GZIP);
+                break;
+            case "--history-format":
+                if(!value.equals("commits") && !value.equals("long"))
+                {
+                    throw new IllegalArgumentException("Unknown history format " + value);
+                }
+                counter.setLongHistory(value.equals("long"));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + option + ". " +
+                        "Should be: " + USAGE);
+        }
+    }
+
+    /**
+     * Parse a number of shards.
+     *
+     * @param value The number of shards
+     * @return The number of shards (at least 1)
+     */
+    private static int parseShards(String value)
+    {
+        try
+        {
+            int shards = Integer.parseInt(value);
+            if(shards >= 1)
+            {
+                return shards;
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            //Invalid number
+        }
+
+        throw new IllegalArgumentException("Invalid number of shards: " + value);
+    }
+
+    /**
+     * Parse a size in bytes, with an optional unit (k, m or g).
+     *
+     * @param value The size (ex: 512m)
+     * @return The size in bytes
+     */
+    private static long parseSize(String value)
+    {
+        String lower = value.toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if(lower.endsWith("k"))
+        {
+            unit = 1L << 10;
+        }
+        else if(lower.endsWith("m"))
+        {
+            unit = 1L << 20;
+        }
+        else if(lower.endsWith("g"))
+        {
+            unit = 1L << 30;
+        }
+
+        try
+        {
+            return Long.parseLong(unit == 1 ? lower : lower.substring(0, lower.length() - 1)) * unit;
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
     }
 }
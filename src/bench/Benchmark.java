@@ -0,0 +1,102 @@
+package bench;
+
+import java.util.Locale;
+
+/**
+ * A small benchmark harness.
+ * </br>
+ * A task is run during some warmup iterations (not measured),
+ * then during the measured iterations. Each iteration runs the
+ * task as many times as possible during a fixed time, or at
+ * least once.
+ * <p/>
+ * The results of the task are kept in a volatile field so the
+ * JIT can't remove the work.
+ */
+public class Benchmark
+{
+    /**
+     * The measured work.
+     */
+    public interface Task
+    {
+        /**
+         * Run the task once.
+         *
+         * @return The result of the task (to be consumed)
+         * @throws Exception If the task fails
+         */
+        Object run() throws Exception;
+    }
+
+    private static volatile Object sink;            //Consume the results
+
+    private final int warmups;                      //Number of warmup iterations
+    private final int iterations;                   //Number of measured iterations
+    private final long iterationNanos;              //Minimal time of an iteration
+
+    public Benchmark(int warmups, int iterations, long iterationMillis)
+    {
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    /**
+     * Measure a task and print the result.
+     *
+     * @param name The name of the benchmark
+     * @param task The task to measure
+     * @return The mean time of one run, in nanoseconds
+     * @throws Exception If the task fails
+     */
+    public double measure(String name, Task task) throws Exception
+    {
+        for(int i = 0; i < warmups; i++)
+        {
+            iteration(task);
+        }
+
+        double[] times = new double[iterations];
+        for(int i = 0; i < iterations; i++)
+        {
+            times[i] = iteration(task);
+        }
+
+        //Mean and standard deviation of the iterations
+        double mean = 0;
+        for(double time : times)
+        {
+            mean += time / times.length;
+        }
+        double variance = 0;
+        for(double time : times)
+        {
+            variance += (time - mean) * (time - mean) / times.length;
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-45s %15.1f ns/op  +- %10.1f  (%8.2f ops/s)",
+                name, mean, Math.sqrt(variance), 1e9 / mean));
+        return mean;
+    }
+
+    /**
+     * Run the task during one iteration.
+     *
+     * @return The mean time of one run during the iteration, in nanoseconds
+     */
+    private double iteration(Task task) throws Exception
+    {
+        long runs = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do
+        {
+            sink = task.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < iterationNanos);
+
+        return (double) elapsed / runs;
+    }
+}
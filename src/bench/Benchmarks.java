@@ -0,0 +1,273 @@
+package bench;
+
+import counters.ClassCounter;
+import counters.CounterController;
+import io.FileLoader;
+import io.JavaLexer;
+import io.Log;
+import io.Tokenizer;
+import io.WordReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+
+/**
+ * Benchmarks of the hot paths, on generated sources
+ * (see {@link SourceGenerator}).
+ * <p/>
+ * Usage: bench.Benchmarks [lexer|counter|pipeline|all] [options]
+ * <ul>
+ *     <li>lexer: {@link WordReader#readNexWord()}, {@link JavaLexer#readNexWord()} and
+ *     {@link JavaLexer#nextToken()} on one class</li>
+ *     <li>counter: each step of {@link ClassCounter#read()} (loading, then counting with each engine)</li>
+ *     <li>pipeline: {@link CounterController#count()} on generated trees</li>
+ * </ul>
+ */
+public class Benchmarks
+{
+    public static final String USAGE = "[lexer|counter|pipeline|all] [options]\n"
+            + "Options:\n"
+            + "\t--methods=<n>\t\tMethods per class (default 50)\n"
+            + "\t--comments=<0-1>\tComment density (default 0.3)\n"
+            + "\t--depth=<n>\t\tNesting depth of the blocks (default 3)\n"
+            + "\t--strings=<0-1>\t\tString literal density (default 0.3)\n"
+            + "\t--sizes=<n,n,...>\tNumber of classes of the trees (default 100,1000)\n"
+            + "\t--threads=<n>\t\tThreads of the pipeline (default 1)\n"
+            + "\t--iterations=<n>\tMeasured iterations (default 5)";
+
+    private String suite = "all";
+    private int methods = 50;
+    private double comments = 0.3;
+    private int depth = 3;
+    private double strings = 0.3;
+    private int[] sizes = {100, 1000};
+    private int threads = 1;
+    private int iterations = 5;
+
+    public static void main(String[] args) throws Exception
+    {
+        Benchmarks benchmarks = new Benchmarks();
+        for(String arg : args)
+        {
+            benchmarks.parseArgument(arg);
+        }
+
+        benchmarks.run();
+    }
+
+    /**
+     * Run the selected benchmarks.
+     *
+     * @throws Exception If a benchmark fails
+     */
+    public void run() throws Exception
+    {
+        Path workDir = Files.createTempDirectory("ift3913-bench");
+        try
+        {
+            System.out.println("Classes: " + methods + " methods, comments " + comments
+                    + ", depth " + depth + ", strings " + strings);
+
+            if(suite.equals("lexer") || suite.equals("all"))
+            {
+                benchmarkLexer();
+            }
+            if(suite.equals("counter") || suite.equals("all"))
+            {
+                benchmarkCounter(workDir);
+            }
+            if(suite.equals("pipeline") || suite.equals("all"))
+            {
+                benchmarkPipeline(workDir);
+            }
+        }
+        finally
+        {
+            delete(workDir);
+        }
+    }
+
+    /**
+     * Read all the words of a class with each engine.
+     */
+    private void benchmarkLexer() throws Exception
+    {
+        String text = newGenerator().generate("gen", "Generated");
+        Benchmark benchmark = new Benchmark(3, iterations, 500);
+
+        benchmark.measure("WordReader.readNexWord (whole class)",
+                () -> readAllWords(new WordReader(text, ClassCounter.GRAMMAR)));
+        benchmark.measure("JavaLexer.readNexWord (whole class)",
+                () -> readAllWords(new JavaLexer(text, ClassCounter.GRAMMAR,
+                        ClassCounter.STRING, ClassCounter.CHAR)));
+        benchmark.measure("JavaLexer.nextToken (whole class)",
+                () -> readAllTokens(new JavaLexer(text, ClassCounter.GRAMMAR,
+                        ClassCounter.STRING, ClassCounter.CHAR)));
+    }
+
+    /**
+     * Measure one class: loading, then loc/cloc/wmc
+     * with each engine.
+     */
+    private void benchmarkCounter(Path workDir) throws Exception
+    {
+        Path file = workDir.resolve("Generated.java");
+        Files.writeString(file, newGenerator().generate("gen", "Generated"), StandardCharsets.UTF_8);
+        Benchmark benchmark = new Benchmark(3, iterations, 500);
+
+        benchmark.measure("FileLoader.load",
+                () -> FileLoader.load(file, null));
+        for(ClassCounter.Engine engine : ClassCounter.Engine.values())
+        {
+            benchmark.measure("ClassCounter.read (" + engine + ")", () -> {
+                ClassCounter counter = new ClassCounter(file.toString(), engine);
+                counter.read();
+                return counter.getLOC() + counter.getCLOC() + counter.getWMC();
+            });
+        }
+    }
+
+    /**
+     * Measure generated trees with {@link CounterController}.
+     */
+    private void benchmarkPipeline(Path workDir) throws Exception
+    {
+        Benchmark benchmark = new Benchmark(1, iterations, 0);
+
+        for(int size : sizes)
+        {
+            Path project = workDir.resolve("project" + size);
+            Path output = workDir.resolve("output" + size);
+            newGenerator().generateTree(project, size);
+            Files.createDirectories(output);
+
+            CounterController controller = new CounterController(project.toString(), output.toString());
+            controller.setThreads(threads);
+
+            //Don't measure the console
+            Log.Level level = Log.getLevel();
+            Log.setLevel(Log.Level.QUIET);
+            double nanos;
+            try
+            {
+                nanos = benchmark.measure("CounterController.count (" + size + " classes)", () -> {
+                    controller.count();
+                    return controller;
+                });
+            }
+            finally
+            {
+                Log.setLevel(level);
+            }
+            System.out.println(String.format(Locale.ROOT, "%-45s %15.1f ns/class", "", nanos / size));
+
+            delete(project);
+        }
+    }
+
+    private SourceGenerator newGenerator()
+    {
+        return new SourceGenerator(methods, comments, depth, strings, 3913);
+    }
+
+    private static int readAllWords(Tokenizer reader)
+    {
+        int words = 0;
+        while(reader.readNexWord() != null)
+        {
+            words++;
+        }
+
+        return words;
+    }
+
+    private static int readAllTokens(Tokenizer reader)
+    {
+        int tokens = 0;
+        while(reader.nextToken() != null)
+        {
+            tokens++;
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Apply an argument (suite or --name=value).
+     */
+    private void parseArgument(String arg)
+    {
+        int separator = arg.indexOf('=');
+        String name = separator == -1 ? arg : arg.substring(0, separator);
+        String value = separator == -1 ? "" : arg.substring(separator + 1);
+
+        switch(name)
+        {
+            case "lexer":
+            case "counter":
+            case "pipeline":
+            case "all":
+                suite = name;
+                break;
+            case "--methods":
+                methods = Integer.parseInt(value);
+                break;
+            case "--comments":
+                comments = Double.parseDouble(value);
+                break;
+            case "--depth":
+                depth = Integer.parseInt(value);
+                break;
+            case "--strings":
+                strings = Double.parseDouble(value);
+                break;
+            case "--sizes":
+                String[] values = value.split(",");
+                sizes = new int[values.length];
+                for(int i = 0; i < values.length; i++)
+                {
+                    sizes[i] = Integer.parseInt(values[i].trim());
+                }
+                break;
+            case "--threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "--iterations":
+                iterations = Integer.parseInt(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown argument " + arg + ". Should be: " + USAGE);
+        }
+    }
+
+    /**
+     * Delete a folder and its content.
+     */
+    private static void delete(Path path) throws IOException
+    {
+        if(!Files.exists(path)) return;
+
+        Files.walkFileTree(path, new SimpleFileVisitor<>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+            {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
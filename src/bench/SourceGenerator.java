@@ -0,0 +1,148 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * This class is used to generate synthetic java sources
+ * for the benchmarks.
+ * </br>
+ * The generated classes can vary in size (number of methods),
+ * comment density, nesting depth of the blocks and density
+ * of string literals. They can always be measured by
+ * {@link counters.ClassCounter}.
+ */
+public class SourceGenerator
+{
+    private final int methods;                  //Number of methods per class
+    private final double commentDensity;        //Probability of a comment after a statement (0 to 1)
+    private final int nestingDepth;             //Depth of the nested blocks in each method
+    private final double stringDensity;         //Probability of a string literal in a statement (0 to 1)
+
+    private final Random random;
+
+    public SourceGenerator(int methods, double commentDensity, int nestingDepth,
+                           double stringDensity, long seed)
+    {
+        this.methods = methods;
+        this.commentDensity = commentDensity;
+        this.nestingDepth = nestingDepth;
+        this.stringDensity = stringDensity;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generate the source of a class.
+     *
+     * @param pkgName The package of the class
+     * @param className The name of the class
+     * @return The source of the class
+     */
+    public String generate(String pkgName, String className)
+    {
+        StringBuilder source = new StringBuilder();
+
+        source.append("package ").append(pkgName).append(";\n\n");
+        source.append("/**\n");
+        source.append(" * Generated class ").append(className).append(".\n");
+        source.append(" * It's only used to \"benchmark\" the counters.\n");
+        source.append(" */\n");
+        source.append("public class ").append(className).append("\n{\n");
+        source.append("    private String name = \"").append(className).append("\";\n\n");
+
+        for(int i = 0; i < methods; i++)
+        {
+            appendMethod(source, i);
+        }
+
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Generate a tree of classes: the classes are spread
+     * over packages of 10 to 50 classes, two levels deep.
+     *
+     * @param root The folder of the tree (created if needed)
+     * @param files The number of classes to generate
+     * @throws IOException If I/O errors occur
+     */
+    public void generateTree(Path root, int files) throws IOException
+    {
+        int pkgIndex = 0;
+        int written = 0;
+        while(written < files)
+        {
+            String pkgName = "gen.p" + (pkgIndex / 10) + ".q" + pkgIndex;
+            Path pkgPath = root.resolve("gen").resolve("p" + (pkgIndex / 10)).resolve("q" + pkgIndex);
+            Files.createDirectories(pkgPath);
+
+            int classes = Math.min(10 + random.nextInt(41), files - written);
+            for(int i = 0; i < classes; i++)
+            {
+                String className = "Generated" + written;
+                Files.writeString(pkgPath.resolve(className + ".java"),
+                        generate(pkgName, className), StandardCharsets.UTF_8);
+                written++;
+            }
+
+            pkgIndex++;
+        }
+    }
+
+    private void appendMethod(StringBuilder source, int index)
+    {
+        if(random.nextDouble() < commentDensity)
+        {
+            source.append("    /*\n");
+            source.append("     * Method number ").append(index).append("\n");
+            source.append("     */\n");
+        }
+
+        source.append("    public int method").append(index).append("(int x, String s)\n");
+        source.append("    {\n");
+        appendBlock(source, 2, nestingDepth);
+        source.append("        return x;\n");
+        source.append("    }\n\n");
+    }
+
+    private void appendBlock(StringBuilder source, int indent, int depth)
+    {
+        String spaces = "    ".repeat(indent);
+
+        appendStatement(source, spaces);
+        if(depth > 0)
+        {
+            String predicat = random.nextBoolean() ? "if(x > " + depth + ")" : "while(x > " + depth + ")";
+            source.append(spaces).append(predicat).append("\n");
+            source.append(spaces).append("{\n");
+            appendBlock(source, indent + 1, depth - 1);
+            source.append(spaces).append("    x--;\n");
+            source.append(spaces).append("}\n");
+        }
+        appendStatement(source, spaces);
+    }
+
+    private void appendStatement(StringBuilder source, String spaces)
+    {
+        source.append(spaces);
+        if(random.nextDouble() < stringDensity)
+        {
+            source.append("s = s + \"value ").append(random.nextInt(1000))
+                    .append(" with \\\"quotes\\\" and // slashes\";");
+        }
+        else
+        {
+            source.append("x = x * ").append(random.nextInt(10)).append(" + 1;");
+        }
+
+        if(random.nextDouble() < commentDensity)
+        {
+            source.append("     // Comment ").append(random.nextInt(1000));
+        }
+        source.append("\n");
+    }
+}
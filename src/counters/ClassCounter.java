@@ -1,20 +1,50 @@
 package counters;
 
+import io.BudgetExceededException;
+import io.FileLoader;
+import io.JavaLexer;
+import io.Log;
+import io.StreamingJavaLexer;
+import io.StreamingWordReader;
+import io.TokenKind;
+import io.Tokenizer;
+import io.WordGrammar;
 import io.WordReader;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 
 /**
  * This class is used to mesure differents metrics
  * on a class. </br>
  * The metrics mesured are: loc, cloc and wmc.
+ * <p/>
+ * The regex used to read a class can backtrack a lot (or overflow
+ * the stack) on long literals, comments or generated code. A class
+ * that exceeds the time budget (see {@link CounterSettings#setTimeBudget(long)}) or the
+ * stack is counted again in a degraded mode, in linear time and without
+ * regex: the literals follow the java escapes. The method declarations
+ * are found by the same scan in both modes (see {@link #countWMC(Tokenizer, boolean)}),
+ * so the counts can only differ on the literals (see {@link #isDegraded()}).
+ * <p/>
+ * A file larger than the streaming size (see {@link CounterSettings#setStreamingSize(long)})
+ * is not loaded: it is read through a {@link StreamingWordReader}, with
+ * a bounded memory.
  */
 public class ClassCounter
 {
+    /**
+     * Version of the metrics. </br>
+     * Must be incremented when a change gives different
+     * counts, so the cached metrics are discarded (see {@link MetricsCache}).
+     */
+    public static final int VERSION = 2;
+
     //region Constant parameters for the WordReader
     public static final String NEW_LINE = "\n";
     public static final String WHITE_SPACES = "[ \t\r]";
@@ -25,6 +55,7 @@ public class ClassCounter
     public static final String MULTI_LINE_COMMENT = "/\\*([^\\*]|(\\*[^/]))*\\*/";       //Can't be used as a special words
 
     public static final String PREDICAT = "if|while|for|switch|else";
+    private static final String[] PREDICATS = PREDICAT.split("\\|");
 
     /**
      * Delimiters are used for multi-comment to prevent stack overflow.
@@ -34,17 +65,147 @@ public class ClassCounter
     static {
         DELIMITERS.put("/\\*", "\\*/");
     }
+
+    /**
+     * The grammar built from the parameters above. </br>
+     * It is compiled once and shared by every reader.
+     */
+    public static final WordGrammar GRAMMAR = new WordGrammar(WHITE_SPACES, DELIMITERS, SEPARATORS,
+            STRING, CHAR, COMMENT);
     //endregion
 
-    private String filePath;            //The path to the file of the class
+    /**
+     * The engine used to separate the class into words.
+     * Both engines give the same metrics.
+     */
+    public enum Engine
+    {
+        REGEX,              //io.WordReader
+        LEXER               //io.JavaLexer (single pass, linear time)
+    }
+
+    private static final CounterSettings DEFAULT_SETTINGS = new CounterSettings();     //Never modified
+
+    private Path file;                  //The file of the class (can be inside an archive)
+    private Engine engine;              //The engine used to read the file
+    private CounterSettings settings;   //Charset, time budget and streaming size of the run
 
     private int loc = 0;                //Non-empty line
     private int cloc = 0;               //Line with comment
     private int wmc = 0;                //Weighted-method complexity
 
+    //Time spent to read the class (0 if it was not read)
+    private long loadNanos = 0;         //Loading the file
+    private long countNanos = 0;        //Counting the metrics
+    private boolean isRead = false;     //The metrics were counted (not from a cache)
+    private boolean isDegraded = false; //The metrics were counted in degraded mode
+    private boolean isDeduplicated = false;     //The metrics were given by a class with the same content
+
+    //Role of a word in a method declaration (see countWMC)
+    private static final byte ROLE_ANYTHING = 0;        //Word without ;="/(){}, new line, comment or bracket
+    private static final byte ROLE_OPEN = 1;            //(
+    private static final byte ROLE_CLOSE = 2;           //)
+    private static final byte ROLE_BRACE = 3;           //{
+    private static final byte ROLE_OTHER = 4;           //Ends every declaration (;=}, literal, ...)
+
+    //Flags of the words kept by countWMC
+    private static final byte FLAG_START = 1;           //A declaration can start with the word
+    private static final byte FLAG_PREDICAT = 2;        //The word is a predicat
+
+    //State of the current line, updated by every word read
+    private boolean isLineEmpty = true;         //Indicate if the line is empty
+    private boolean isCommentedLine = false;    //Indicate if the line has a comment
+
     public ClassCounter(String filePath)
     {
-        this.filePath = filePath;
+        this(Paths.get(filePath));
+    }
+
+    public ClassCounter(String filePath, Engine engine)
+    {
+        this(Paths.get(filePath), engine);
+    }
+
+    public ClassCounter(Path file)
+    {
+        this(file, Engine.LEXER);
+    }
+
+    public ClassCounter(Path file, Engine engine)
+    {
+        this(file, engine, DEFAULT_SETTINGS);
+    }
+
+    /**
+     * @param file The file of the class
+     * @param settings The settings of the run
+     */
+    public ClassCounter(Path file, CounterSettings settings)
+    {
+        this(file, Engine.LEXER, settings);
+    }
+
+    /**
+     * @param file The file of the class
+     * @param engine The engine used to read the file
+     * @param settings The settings of the run
+     */
+    public ClassCounter(Path file, Engine engine, CounterSettings settings)
+    {
+        this.file = file;
+        this.engine = engine;
+        this.settings = settings;
+    }
+
+    /**
+     * Create a counter with metrics that are already known
+     * (from a cache). The file doesn't need to be read.
+     *
+     * @param filePath The path to the file of the class
+     * @param loc Non-empty line
+     * @param cloc Line with comment
+     * @param wmc Weighted-method complexity
+     */
+    public ClassCounter(String filePath, int loc, int cloc, int wmc)
+    {
+        this(Paths.get(filePath), loc, cloc, wmc);
+    }
+
+    /**
+     * Create a counter with metrics that are already known
+     * (from a cache). The file doesn't need to be read.
+     *
+     * @param file The file of the class
+     * @param loc Non-empty line
+     * @param cloc Line with comment
+     * @param wmc Weighted-method complexity
+     */
+    public ClassCounter(Path file, int loc, int cloc, int wmc)
+    {
+        this(file);
+        this.loc = loc;
+        this.cloc = cloc;
+        this.wmc = wmc;
+    }
+
+    /**
+     * Create a counter with the metrics of another class with
+     * the same content (see {@link ContentIndex}). The file
+     * doesn't need to be read. </br>
+     * The metrics are degraded if the other class was counted
+     * in degraded mode.
+     *
+     * @param file The file of the class
+     * @param loc Non-empty line
+     * @param cloc Line with comment
+     * @param wmc Weighted-method complexity
+     * @param isDegraded True if the other class was counted in degraded mode
+     */
+    public ClassCounter(Path file, int loc, int cloc, int wmc, boolean isDegraded)
+    {
+        this(file, loc, cloc, wmc);
+        this.isDegraded = isDegraded;
+        this.isDeduplicated = true;
     }
 
     /**
@@ -56,7 +217,7 @@ public class ClassCounter
      */
     public void test() throws IOException
     {
-        WordReader reader = readFile();
+        Tokenizer reader = readFile();
 
         String word = reader.readNexWord();
         while(word != null)
@@ -68,20 +229,104 @@ public class ClassCounter
 
     /**
      * Read the file and count loc, cloc and wmc.
+     * </br>
+     * The file is read only once: the three metrics
+     * are counted from the same words.
      *
      * @throws IOException If an error occurs while reading the file
      */
     public void read() throws IOException
     {
-        WordReader reader = readFile();
+        long start = System.nanoTime();
+        if(Files.size(file) > settings.getStreamingSize())
+        {
+            //Too large to be loaded -> read through a window
+            try(Reader input = FileLoader.open(file, settings.getCharset()))
+            {
+                loadNanos = System.nanoTime() - start;
+                measure(new StreamingWordReader(input, GRAMMAR));
+            }
+            return;
+        }
+
+        Tokenizer reader = readFile();
+        loadNanos = System.nanoTime() - start;
+
+        measure(reader);
+    }
+
+    /**
+     * Count loc, cloc and wmc of the content of the file,
+     * already loaded (see {@link ContentIndex}).
+     *
+     * @param content The bytes of the file (see {@link FileLoader#loadBytes(Path)})
+     * @throws IOException If the content can't be read
+     */
+    public void read(ByteBuffer content) throws IOException
+    {
+        long start = System.nanoTime();
+        Tokenizer reader = tokenizer(FileLoader.decode(content, settings.getCharset()));
+        loadNanos = System.nanoTime() - start;
+
+        measure(reader);
+    }
 
+    /**
+     * Count loc, cloc and wmc of the given content instead
+     * of the content of the file (for example a version of
+     * the file from the history of the project).
+     *
+     * @param text The content of the class
+     * @throws IOException If the content can't be read
+     */
+    public void read(String text) throws IOException
+    {
+        measure(tokenizer(text));
+    }
+
+    /**
+     * Count the metrics with the words of the reader.
+     *
+     * @param reader The reader of the class
+     * @throws IOException If the class can't be read
+     */
+    private void measure(Tokenizer reader) throws IOException
+    {
+        long start = System.nanoTime();
         try
         {
-            countLOC(reader);
-            reader.reset();                 //Return the head of the reader to the beginning of the file
-            countCLOC(reader);
-            reader.reset();                 //Return the head of the reader to the beginning of the file
-            countWMC(reader);
+            long budget = settings.getTimeBudget();
+            if(budget > 0)
+            {
+                reader.setDeadline(start + budget * 1_000_000);
+            }
+
+            count(reader, false);
+            isRead = true;
+        }
+        catch (StackOverflowError | BudgetExceededException e)
+        {
+            //Too complex for the regex -> count again in linear time
+            Log.info("Degraded mode (" + (e instanceof StackOverflowError ? "stack overflow" : e.getMessage())
+                    + "): " + file);
+            loc = 0;
+            cloc = 0;
+            wmc = 0;
+
+            try
+            {
+                countDegraded(reader.getText());
+            }
+            catch (RuntimeException degradedError)
+            {
+                loc = 0;
+                cloc = 0;
+                wmc = 0;
+
+                throw new IOException("Can't read " + file, degradedError);
+            }
+            isRead = true;
+            isDegraded = true;
         }
         catch (RuntimeException e)
         {
@@ -90,7 +335,11 @@ public class ClassCounter
             cloc = 0;
             wmc = 0;
 
-            throw new IOException("Can't read " + filePath, e);
+            throw new IOException("Can't read " + file, e);
+        }
+        finally
+        {
+            countNanos = System.nanoTime() - start;
         }
     }
 
@@ -110,230 +359,472 @@ public class ClassCounter
     }
 
     /**
-     * Read the content of the file and convert it to a {@link WordReader}.
+     * @return True if the metrics were counted by this counter,
+     *         false if they were given (cache) or not counted yet
+     */
+    public boolean isRead()
+    {
+        return isRead;
+    }
+
+    /**
+     * @return True if the metrics were counted in degraded mode,
+     *         because the class exceeded the time budget or the stack
+     */
+    public boolean isDegraded()
+    {
+        return isDegraded;
+    }
+
+    /**
+     * @return True if the metrics were given by another class
+     *         with the same content (see {@link ContentIndex})
+     */
+    public boolean isDeduplicated()
+    {
+        return isDeduplicated;
+    }
+
+    /**
+     * @return Time spent loading the file, in nanoseconds (0 if not read)
+     */
+    public long getLoadNanos()
+    {
+        return loadNanos;
+    }
+
+    /**
+     * @return Time spent counting the metrics, in nanoseconds (0 if not read)
+     */
+    public long getCountNanos()
+    {
+        return countNanos;
+    }
+
+    public Engine getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * Read the content of the file and convert it to a {@link Tokenizer}
+     * of the selected engine.
      *
      * @return A reader of the content of the file
      * @throws IOException If an error occur during the reading
      */
-    private WordReader readFile() throws IOException
+    private Tokenizer readFile() throws IOException
     {
-        File file = new File(filePath);     //The file to read
+        //Read the content of the file
+        return tokenizer(FileLoader.load(file, settings.getCharset()));
+    }
 
-        //Open the file
-        try(BufferedReader bufferedReader = new BufferedReader(new FileReader(file)))
+    /**
+     * Create a {@link Tokenizer} of the selected engine.
+     *
+     * @param text The content of the class
+     * @return A reader of the content
+     */
+    private Tokenizer tokenizer(String text)
+    {
+        if(engine == Engine.LEXER)
         {
-            StringBuilder textBuilder = new StringBuilder();
+            return new JavaLexer(text, GRAMMAR, STRING, CHAR);
+        }
 
-            //Read the content of the file
-            int c = bufferedReader.read();
-            while(c != -1)
-            {
-                textBuilder.append((char) c);
-                c = bufferedReader.read();
-            }
+        return new WordReader(text, GRAMMAR);
+    }
+
+    /**
+     * Read the file and count loc, cloc and wmc in a single pass. </br>
+     * The words are read by the wmc count, every word read also
+     * updates the loc and cloc counts (see {@link #readToken(Tokenizer)}).
+     *
+     * @param reader The reader of the file
+     * @param isEndAllowed True if a method can be cut by the end of the
+     *                     file (degraded mode), false to throw an exception
+     */
+    private void count(Tokenizer reader, boolean isEndAllowed)
+    {
+        isLineEmpty = true;
+        isCommentedLine = false;
 
-            //Create a reader with the content
-            String text = textBuilder.toString();
-            return new WordReader(text, WHITE_SPACES, DELIMITERS, SEPARATORS, STRING,
-                    CHAR, COMMENT);
+        countWMC(reader, isEndAllowed);
+
+        //Make sure we didn't skip last line
+        if(!isLineEmpty)
+        {
+            loc++;
+            isLineEmpty = true;
+        }
+        if(isCommentedLine)
+        {
+            cloc++;
+            isCommentedLine = false;
         }
     }
 
     /**
-     * Read the file and count the number of non-empty lines.
+     * Read the next word and update the loc and cloc
+     * counts with it.
      *
-     * @param reader The reader for the file
+     * @param reader The reader of the file
+     * @return The kind of the word read, or null at the end of the file
      */
-    private void countLOC(WordReader reader)
+    private TokenKind readToken(Tokenizer reader)
     {
-        boolean isLineEmpty = true;                 //Indicate if the line is empty
+        TokenKind kind = reader.nextToken();
+        if(kind == null) return null;
 
-        String word = reader.readNexWord();         //Read first word
-        while (word != null)
-        {
-            if(word.startsWith("/*"))               //A multi line comment (fixme not ideal)
-            {
-                //Update the loc count
-                int size = getMultiLineCommentSize(word);
-                loc += size - 1;
+        countLines(reader, kind);
+        return kind;
+    }
 
-                //The last line will be counted normally
-                isLineEmpty = false;
-            }
-            else if(!word.matches(NEW_LINE))        //Non-empty line
+    /**
+     * Update the loc and cloc counts with the current
+     * word of the reader.
+     *
+     * @param reader The reader of the file
+     * @param kind The kind of the word
+     */
+    private void countLines(Tokenizer reader, TokenKind kind)
+    {
+        if(kind == TokenKind.BLOCK_COMMENT)         //A multi line comment
+        {
+            //Update the loc and cloc count with the size of the multi line comment
+            int size = getMultiLineCommentSize(reader);
+            loc += size - 1;
+            cloc += size - 1;
+
+            //The last line will be counted normally
+            isLineEmpty = false;
+            isCommentedLine = true;
+        }
+        else if(kind == TokenKind.NEWLINE)          //At end of line
+        {
+            //Update the loc and cloc count
+            if(!isLineEmpty)
             {
-                isLineEmpty = false;
+                loc++;
             }
-            else if(!isLineEmpty)                   //At end of line if line is not empty
+            if(isCommentedLine)
             {
-                loc++;                              //Update the loc count
-                isLineEmpty = true;                 //Reset the flag
+                cloc++;
             }
 
-            word = reader.readNexWord();            //Read next word
+            //Reset the flags
+            isLineEmpty = true;
+            isCommentedLine = false;
         }
-
-        //Make sure we didn't skip last line
-        if(!isLineEmpty)
+        else                                        //Non-empty line
         {
-            loc++;
-            isLineEmpty = true;
+            isLineEmpty = false;
+
+            if(kind == TokenKind.LINE_COMMENT)      //Comment
+            {
+                isCommentedLine = true;
+            }
         }
     }
 
     /**
-     * Read the file and count the number of commented lines.
+     * Read the file and calculate the weighted method complexity.
+     * </br>
+     * All the words are read through {@link #readToken(Tokenizer)}.
+     * <p/>
+     * A method declaration is a word that is not a separator, a literal or
+     * a comment, followed by "(" ... ")" ... "{" with only other words, new
+     * lines, brackets and comments between them. At each word, the previous
+     * versions tested if a declaration starts there (with a regex on the rest
+     * of the text): the first word that starts one is the start of a method,
+     * unless a predicat (if, while, ...) is found before its "{".
+     * <p/>
+     * The declarations are found in one forward pass instead: a declaration
+     * can only end at a "{" whose last structural words (parenthesis, brace
+     * or any word with ;="/}) are "(" and ")". Its possible starts are the
+     * words between the structural word before the "(" and the "(", so only
+     * the flags of these words are kept. Then the complexity of the method is
+     * counted until its ending '}' (1 + number of predicats), and the word
+     * after the end of a method (or after a predicat) is skipped, like the
+     * previous versions did.
      *
      * @param reader The reader of the file
+     * @param isEndAllowed True if a method can be cut by the end of the
+     *                     file, false to throw an exception
      */
-    private void countCLOC(WordReader reader)
+    private void countWMC(Tokenizer reader, boolean isEndAllowed)
     {
-        boolean isCommentedLine = false;        //Indicate if the line has a comment
-
-        String word = reader.readNexWord();     //Read first word
-        while (word != null)
+        //The last three structural words, [0] is the latest
+        int[] positions = {-1, -1, -1};
+        byte[] roles = {ROLE_OTHER, ROLE_OTHER, ROLE_OTHER};
+
+        //Flags of the words since the oldest structural word
+        byte[] flags = new byte[256];
+        int base = 0;                           //Index of the word of flags[0]
+        int from = 0;                           //Index of the first word that can start a declaration
+
+        int skip = 0;                           //Number of words to read without looking at them
+        boolean isInMethod = false;
+        int imbrication = 0;
+        int complexity = 0;
+
+        int index = -1;                         //Index of the current word
+        TokenKind kind;
+        while((kind = readToken(reader)) != null)
         {
-            if(word.matches(NEW_LINE))           //At end of line
+            index++;
+            byte role = role(reader, kind);
+
+            //Keep the flags of the word
+            if(index - base == flags.length)
             {
-                //Update the cloc count
-                if(isCommentedLine)
+                int kept = positions[2] + 1;    //Only the words after the oldest structural word are needed
+                if(kept - base > flags.length / 2)
                 {
-                    cloc++;
+                    System.arraycopy(flags, kept - base, flags, 0, index - kept);
                 }
-
-                isCommentedLine = false;
+                else
+                {
+                    byte[] larger = new byte[flags.length * 2];
+                    System.arraycopy(flags, kept - base, larger, 0, index - kept);
+                    flags = larger;
+                }
+                base = kept;
             }
-            else if(word.matches(COMMENT))          //Comment
+            boolean isStart = role == ROLE_ANYTHING
+                    && kind != TokenKind.BLOCK_COMMENT && kind != TokenKind.LINE_COMMENT;
+            flags[index - base] = (byte) ((isStart ? FLAG_START : 0)
+                    | (isPredicat(reader, kind) ? FLAG_PREDICAT : 0));
+
+            if(skip > 0)
             {
-                isCommentedLine = true;
+                skip--;
             }
-            else if(word.startsWith("/*"))          //Multi-line comment (fixme not ideal)
+            else if(isInMethod)
             {
-                // Update the cloc count with the size of the multi line comment
-                int size = getMultiLineCommentSize(word);
-                cloc += size - 1;
+                //Method complexity is 1 + # of predicats
+                if(isSeparator(reader, kind, '{'))
+                {
+                    imbrication++;
+                }
+                else if(isSeparator(reader, kind, '}'))
+                {
+                    imbrication--;
+                }
+                else if(isPredicat(reader, kind))
+                {
+                    complexity++;
+                }
 
-                //The last line will be counted normally
-                isCommentedLine = true;
+                if(imbrication == 0)
+                {
+                    wmc += complexity;
+                    isInMethod = false;
+                    skip = 1;
+                    from = index + 2;
+                }
+            }
+            else if(role == ROLE_BRACE && roles[0] == ROLE_CLOSE && roles[1] == ROLE_OPEN)
+            {
+                //Look for the first declaration ending here, from the first word not read yet
+                int open = positions[1];
+                int start = Math.max(from, positions[2] + 1);
+                while(true)
+                {
+                    start = nextFlag(flags, base, start, open, FLAG_START);
+                    if(start == -1)
+                    {
+                        from = index + 1;
+                        break;
+                    }
+
+                    int predicat = nextFlag(flags, base, start, index, FLAG_PREDICAT);
+                    if(predicat == -1)
+                    {
+                        //Move inside the method, then count its complexity
+                        isInMethod = true;
+                        imbrication = 1;
+                        complexity = 1;
+                        skip = 1;
+                        break;
+                    }
+
+                    //Not a method (if, while, ...): the word after the predicat is skipped
+                    start = predicat + 2;
+                    from = start;
+                }
             }
 
-            word = reader.readNexWord();        //Read next word
+            if(role != ROLE_ANYTHING)
+            {
+                positions[2] = positions[1];
+                positions[1] = positions[0];
+                positions[0] = index;
+                roles[2] = roles[1];
+                roles[1] = roles[0];
+                roles[0] = role;
+            }
         }
 
-        //Make sure we didn't skip last line
-        if(isCommentedLine)
+        if(isInMethod)
         {
-            cloc++;
-            isCommentedLine = false;
+            if(!isEndAllowed)
+            {
+                throw new IllegalStateException("Unexpected end of the class");
+            }
+            else if(skip == 0)
+            {
+                wmc += complexity;          //Count the words read inside the method
+            }
         }
     }
 
     /**
-     * Read the file and calculate the weighted method complexity.
+     * Return the index of the first word that has the flag.
      *
-     * @param reader The reader of the file
+     * @param flags The flags of the words
+     * @param base Index of the word of flags[0]
+     * @param from Index of the first word to check
+     * @param to Index after the last word to check
+     * @param flag The flag
+     * @return The index of the word, or -1
      */
-    private void countWMC(WordReader reader)
-    {
-        //Build a regex to match method declaration
-        String commentRegex =
-                ClassCounter.COMMENT + "(\n|\r\n)"
-                + "|" + ClassCounter.MULTI_LINE_COMMENT;        //Regex that matches comment
-        String anythingRegex = "("
-                + "[^;=\"/\\(\\)\\{\\}]"
-                + "|" + commentRegex
-                + ")*";                                         //Regex that matches word&comment
-        String functionRegex = "(" + WHITE_SPACES + ")*" + "[^ \t\r;=\"/\\(\\)\\{\\}]"
-                + anythingRegex
-                + "\\(" + anythingRegex + "\\)"
-                + anythingRegex + "\\{";                        //Regex that matches method declaration
-
-        //Read through the next to find method declaraction
-        do
+    private static int nextFlag(byte[] flags, int base, int from, int to, byte flag)
+    {
+        for(int i = from; i < to; i++)
         {
-            //Check if the head of the text matches a method declaration
-            if(reader.match(functionRegex))
+            if((flags[i - base] & flag) != 0)
             {
-                //Move to the start of the method
-                String word;
-                do
-                {
-                    word = reader.readNexWord();
-                } while (!word.matches("\\{") && !isPredicat(word));
-
-                //We could be looking at a predicat (if, while, ...) -> exist if yes
-                if(isPredicat(word)) continue;
-
-                //Calculate the complexity
-                reader.readNexWord();                                   //Move inside the method
-                int complexity = calculateFunctionComplexity(reader);
-
-                //Update the WMC count
-                wmc += complexity;
+                return i;
             }
-        } while (reader.readNexWord() != null);                         //Move to the next word;
+        }
 
+        return -1;
     }
 
     /**
-     * Calculate the complexity of a function (at the head
-     * of the reader). </br>
-     * The start of the function is considered to be the
-     * character after the first '{'.
-     * </p>
-     * Move the head of the reader to the end of the function. </br>
-     * The end of the function is the character after the
-     * ending '}'.
+     * Count loc, cloc and wmc in degraded mode: in linear time,
+     * without regex. </br>
+     * The words are separated by a {@link JavaLexer} without literal
+     * regex, and a method cut by the end of the file is counted.
+     * <p/>
+     * The text of a streamed file is not kept: the file is read
+     * again through a {@link StreamingJavaLexer}, with a bounded
+     * memory.
      *
-     * @param reader A WordReader with the head at the
-     *               start of the function
-     * @return The complexity of the function
+     * @param text The content of the class, or null if it was streamed
+     * @throws IOException If the streamed file can't be read again
      */
-    private int calculateFunctionComplexity(WordReader reader)
+    private void countDegraded(String text) throws IOException
     {
-        int count = 1;                  //Method complexity is 1 + # of predicats
-        int imbrication = 1;
+        if(text != null)
+        {
+            count(new JavaLexer(text, GRAMMAR), true);
+            return;
+        }
 
-        do
+        try(Reader input = FileLoader.open(file, settings.getCharset()))
         {
-            String word = reader.readNexWord();
+            count(new StreamingJavaLexer(input, GRAMMAR), true);
+        }
+    }
+
+    /**
+     * Return the role of the current word of the reader
+     * in a method declaration (see {@link #countWMC(Tokenizer, boolean)}).
+     *
+     * @param reader The reader
+     * @param kind The kind of the word
+     * @return The role of the word
+     */
+    private static byte role(Tokenizer reader, TokenKind kind)
+    {
+        switch(kind)
+        {
+            case NEWLINE:
+            case LINE_COMMENT:
+                return ROLE_ANYTHING;
+            case BLOCK_COMMENT:
+                return isCommentMatched(reader) ? ROLE_ANYTHING : ROLE_OTHER;
+            case SEPARATOR:
+                switch(reader.getTokenChar(0))
+                {
+                    case '(':
+                        return ROLE_OPEN;
+                    case ')':
+                        return ROLE_CLOSE;
+                    case '{':
+                        return ROLE_BRACE;
+                    case '[': case ']':
+                        return ROLE_ANYTHING;
+                    default:
+                        return ROLE_OTHER;
+                }
+            default:
+                //Any word without the characters ;="/(){}
+                for(int i = reader.getTokenEnd() - reader.getTokenStart() - 1; i >= 0; i--)
+                {
+                    if(";=\"/(){}".indexOf(reader.getTokenChar(i)) != -1)
+                    {
+                        return ROLE_OTHER;
+                    }
+                }
+                return ROLE_ANYTHING;
+        }
+    }
 
-            if(word.matches("\\{"))
+    /**
+     * Check if the current word of the reader, a multi-line comment,
+     * matches the regex {@link #MULTI_LINE_COMMENT}: a '*' inside the
+     * comment must be followed by a character other than '/'.
+     *
+     * @param reader The reader, at the comment
+     * @return True if the comment matches the regex
+     */
+    private static boolean isCommentMatched(Tokenizer reader)
+    {
+        int end = reader.getTokenEnd() - reader.getTokenStart() - 2;        //Before the */
+        int i = 2;                                                          //After the /*
+        while(i < end)
+        {
+            if(reader.getTokenChar(i) != '*')
             {
-                imbrication++;
+                i++;
             }
-            else if(word.matches("\\}"))
+            else if(i + 1 < end && reader.getTokenChar(i + 1) != '/')
             {
-                imbrication--;
+                i += 2;
             }
-            else if(isPredicat(word))
+            else
             {
-                count++;
+                return false;
             }
-        } while (imbrication > 0);
+        }
 
-        return count;
+        return true;
     }
 
     /**
-     * Return the size of a multi-line comment. </br>
+     * Return the size of the multi-line comment at the
+     * current word of the reader. </br>
      * The size is calculated as the number of
      * non-empty line inside the comment.
      *
-     * @param comment The comment
+     * @param reader The reader, at the comment
      * @return The size of the comment
      */
-    private int getMultiLineCommentSize(String comment)
+    private int getMultiLineCommentSize(Tokenizer reader)
     {
         int size = 0;                           //Nb of non-empty line in the comment
         boolean isLineEmpty = false;            //Indicate if the line is empty
+        int length = reader.getTokenEnd() - reader.getTokenStart();
 
         //Update the cloc count for every line in the multiline comment
         int i = 0;
         do
         {
-            char c = comment.charAt(i);
-            if(String.valueOf(c).matches(NEW_LINE))             //At end of line
+            char c = reader.getTokenChar(i);
+            if(c == '\n')                                       //At end of line
             {
                 //Update size
                 if(!isLineEmpty)
@@ -349,7 +840,7 @@ public class ClassCounter
             }
 
             i++;                                                //Move to next char
-        } while (i < comment.length());
+        } while (i < length);
 
         //Count the last line
         if(!isLineEmpty)
@@ -360,25 +851,74 @@ public class ClassCounter
         return size;
     }
 
-    private boolean isWhiteSpace(char c)
-    {
-        return isWhiteSpace(String.valueOf(c));
-    }
-
-    private boolean isWhiteSpace(String str)
+    /**
+     * Same as the regex {@link #WHITE_SPACES}.
+     */
+    private static boolean isWhiteSpace(char c)
     {
-        return str.matches(WHITE_SPACES);
+        return c == ' ' || c == '\t' || c == '\r';
     }
 
     //Do not use because MULTI_LINE_COMMENT causes issue
     @Deprecated
     private boolean isComment(String str)
     {
-        return str.matches(COMMENT) || str.matches(MULTI_LINE_COMMENT);
+        return matches(str, COMMENT) || matches(str, MULTI_LINE_COMMENT);
     }
 
-    private boolean isPredicat(String str)
+    /**
+     * Check if the current word of the reader is a predicat
+     * (see {@link #PREDICAT}), without regex.
+     *
+     * @param reader The reader
+     * @param kind The kind of the word
+     * @return True if the word is a predicat
+     */
+    private static boolean isPredicat(Tokenizer reader, TokenKind kind)
+    {
+        if(kind != TokenKind.KEYWORD) return false;
+
+        for(String predicat : PREDICATS)
+        {
+            if(reader.isToken(predicat))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if the current word of the reader is the given separator.
+     *
+     * @param reader The reader
+     * @param kind The kind of the word
+     * @param separator The separator
+     * @return True if the word is the separator
+     * @throws IllegalStateException At the end of the file (a method is not closed)
+     */
+    private static boolean isSeparator(Tokenizer reader, TokenKind kind, char separator)
+    {
+        if(kind == null)
+        {
+            throw new IllegalStateException("Unexpected end of the class");
+        }
+
+        return kind == TokenKind.SEPARATOR && reader.getTokenChar(0) == separator;
+    }
+
+    /**
+     * Check if the entire string matches the regex. </br>
+     * Same as {@link String#matches(String)}, but the
+     * regex is only compiled once.
+     *
+     * @param str The string to check
+     * @param regex The regex to match
+     * @return True if the string matches the regex
+     */
+    private static boolean matches(String str, String regex)
     {
-        return str.matches(PREDICAT);
+        return GRAMMAR.compile(regex).matcher(str).matches();
     }
 }
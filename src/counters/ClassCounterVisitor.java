@@ -1,60 +1,85 @@
 package counters;
 
+import io.Log;
+import io.RowSink;
+
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * A {@link FileVisitor} that measures different metrics
  * on each class and package of a java project.
  * </br>
  * The measuring is done by {@link ClassCounter}.
+ * </br>
+ * The classes can be measured in advance (in parallel) and
+ * given to the visitor with {@link #setPendingClasses(Map)}.
+ * The visit itself is always sequential, so the tables are
+ * the same in both cases.
+ * <p/>
+ * The rows of the tables are given to a {@link RowSink} as soon
+ * as each class or package is measured, they are not kept in memory.
  */
 public class ClassCounterVisitor implements FileVisitor<Path>
 {
     private final Path root;                    //Root of the project (generaly the src folder)
     private Path currentPackage;                //Path of the currently visited package (relative to the root)
 
-    //Measures for each class
-    private final HashMap<String, Integer> classLOC
-            = new HashMap<>();
-    private final HashMap<String, Integer> classCLOC
-            = new HashMap<>();
-    private final HashMap<String, Float> classDC
-            = new HashMap<>();
-    private final HashMap<String, Integer> classWMC
-            = new HashMap<>();
-    private final HashMap<String, Float> classBC
-            = new HashMap<>();
-
-    //Arrays for the csv
-    private final ArrayList<String[]> classTable
-            = new ArrayList<>();       // {path, name, loc, cloc, dc, wmc, bc}
-    private final ArrayList<String[]> packageTable
-            = new ArrayList<>();     // {path, name, loc, cloc, dc, wcp, bc}
-
-    public ClassCounterVisitor(Path root)
+    //Metrics of the current class (reused for every class)
+    private final ClassMetrics classMetrics = new ClassMetrics();
+
+    //Metrics of each package, built during the visit
+    private final PackageTree packageTree = new PackageTree();
+
+    //Tables for the csv
+    private final RowSink classTable;           // {path, name, loc, cloc, dc, wmc, bc}
+    private final RowSink packageTable;         // {path, name, loc, cloc, dc, wcp, bc}
+
+    //Classes measured in advance (absolute path -> counter), can be null
+    private Map<Path, Future<ClassCounter>> pendingClasses;
+    private MetricsCache cache;                 //Metrics of the previous runs, can be null
+    private MetricsSink metricsSink;            //Receive the metrics as numbers, can be null
+    private RunStatistics statistics;           //Statistics of the run, can be null
+    private long classNanos = 0;                //Time spent reading (or waiting for) the classes
+    private ProgressReporter progress;          //Progress of the run, can be null
+    private Predicate<Path> classFilter;        //Classes to measure (path relative to the root), all if null
+    private ContentIndex contentIndex;          //Classes already counted in the run, by content, can be null
+    private PathFilter.Walk pathFilter;         //Folders and files visited, all if null
+    private CounterSettings settings = new CounterSettings();  //Charset, time budget and streaming size
+
+    /**
+     * @param root Root of the project
+     * @param classTable Receive the row of each class
+     * @param packageTable Receive the row of each package
+     * @throws IOException If the headers can't be written
+     */
+    public ClassCounterVisitor(Path root, RowSink classTable, RowSink packageTable) throws IOException
     {
         this.root = root;
+        this.classTable = classTable;
+        this.packageTable = packageTable;
 
         //Add headers to the table
-        classTable.add(new String[]{
+        classTable.writeRow(
                 "chemin", "classe",
                 "classe_LOC", "classe_CLOC",
                 "classe_DC", "WMC",
                 "classe_BC"
-        });
-        packageTable.add(new String[]{
+        );
+        packageTable.writeRow(
                 "chemin", "paquet",
                 "paquet_LOC", "paquet_CLOC",
                 "paquet_DC", "WCP",
                 "paquet_BC"
-        });
+        );
     }
 
     /**
@@ -63,13 +88,26 @@ public class ClassCounterVisitor implements FileVisitor<Path>
      *
      * @param dir The path to the directory
      * @param attrs the directory's basic attributes
-     * @return Always Continue
+     * @return Continue, or skip the sub-tree if the directory is excluded
      */
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
     {
+        if(pathFilter != null && !pathFilter.enter(dir))
+        {
+            if(Log.isVerbose())
+            {
+                Log.verbose("Skipping " + root.relativize(dir));
+            }
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+
         currentPackage = root.relativize(dir);
-        System.out.println("Entering " + pathToPackageName(currentPackage));
+        packageTree.enter(dir.getFileName() == null ? "" : dir.getFileName().toString());
+        if(Log.isVerbose())
+        {
+            Log.verbose("Entering " + pathToPackageName(currentPackage));
+        }
 
         return FileVisitResult.CONTINUE;
     }
@@ -89,11 +127,11 @@ public class ClassCounterVisitor implements FileVisitor<Path>
         Path filePath = root.relativize(file);
 
         //Only read java files
-        if(filePath.toString().endsWith(".java"))
+        if(filePath.toString().endsWith(".java") && (pathFilter == null || pathFilter.accept(file))
+                && (classFilter == null || classFilter.test(filePath)))
         {
             String className = pathToClassName(filePath);
             String classPath = filePath.toString();
-            System.out.print("\tVisiting " + className);
 
             try
             {
@@ -101,15 +139,22 @@ public class ClassCounterVisitor implements FileVisitor<Path>
             }
             catch(Exception e)
             {
-                System.out.println("\tERROR");
+                Log.error("\tVisiting " + className + "\tERROR");
                 throw e;
             }
 
-            System.out.println("\tCount done!");
+            if(progress != null)
+            {
+                progress.classDone();
+            }
+            if(Log.isVerbose())
+            {
+                Log.verbose("\tVisiting " + className + "\tCount done!");
+            }
         }
-        else
+        else if(Log.isVerbose())
         {
-            System.out.println("\tIgnoring " + file.getFileName());
+            Log.verbose("\tIgnoring " + file.getFileName());
         }
 
         return FileVisitResult.CONTINUE;
@@ -137,7 +182,7 @@ public class ClassCounterVisitor implements FileVisitor<Path>
         line[4] = "N/A";
         line[5] = "N/A";
         line[6] = "N/A";
-        classTable.add(line);
+        classTable.writeRow(line);
 
         return FileVisitResult.SKIP_SIBLINGS;
     }
@@ -149,57 +194,151 @@ public class ClassCounterVisitor implements FileVisitor<Path>
      * @param exc null if the iteration of the directory completes without an error;
      *            otherwise the I/O exception that caused the iteration of the directory to complete prematurely
      * @return Always Continue
+     * @throws IOException If the row of the package can't be written
      */
     @Override
-    public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
     {
+        PackageTree.Node pkg = packageTree.exit();        //Sub-packages are done -> compute the package
+        if(pathFilter != null)
+        {
+            pathFilter.exit();
+        }
+
         if(exc == null)
         {
             String pkgName = pathToPackageName(currentPackage);
             String pkgPath = currentPackage.toString();
-            System.out.print("Exiting " + pathToPackageName(currentPackage));
 
             //Ignore the root package
-            if(!pkgName.isBlank())
+            if(pkg.getParent() != null)
             {
-                countPackage(pkgName, pkgPath);
+                countPackage(pkgName, pkgPath, pkg);
             }
 
             //Return to the parent
-            currentPackage = root.relativize(dir.getParent());
-            System.out.println(" returning to " + pathToPackageName(currentPackage));
+            currentPackage = parentPackage(dir);
+            if(Log.isVerbose())
+            {
+                Log.verbose("Exiting " + pkgName + " returning to " + pathToPackageName(currentPackage));
+            }
         }
         else
         {
-            currentPackage = root.relativize(dir.getParent());
-            System.err.println(" could not complete the visit of " + pathToPackageName(currentPackage));
+            currentPackage = parentPackage(dir);
+            Log.error(" could not complete the visit of " + pathToPackageName(currentPackage));
         }
 
         return FileVisitResult.CONTINUE;
     }
 
-    public String[][] getClassTable()
+    /**
+     * Set the classes that are measured in advance. </br>
+     * When a file is visited, its counter is taken from
+     * this map instead of being read by the visitor.
+     *
+     * @param pendingClasses Map of absolute path -> counter (already read)
+     */
+    public void setPendingClasses(Map<Path, Future<ClassCounter>> pendingClasses)
     {
-        String[][] classTableArray = new String[classTable.size()][7];
+        this.pendingClasses = pendingClasses;
+    }
 
-        for(int i = 0; i < classTable.size(); i++)
-        {
-            classTableArray[i] = classTable.get(i);
-        }
+    /**
+     * Set the cache used to skip the classes that
+     * didn't change since the previous run.
+     *
+     * @param cache The cache, or null
+     */
+    public void setCache(MetricsCache cache)
+    {
+        this.cache = cache;
+    }
 
-        return classTableArray;
+    /**
+     * Set the folders and the files visited. The sub-tree of
+     * an excluded folder is skipped.
+     *
+     * @param pathFilter The filter, or null to visit everything
+     */
+    public void setPathFilter(PathFilter pathFilter)
+    {
+        this.pathFilter = pathFilter == null ? null : pathFilter.walk(root);
+    }
+
+    /**
+     * Set the index of the contents counted during the run:
+     * a class with the same content as a class already counted
+     * is not counted again.
+     *
+     * @param contentIndex The index, or null
+     */
+    public void setContentIndex(ContentIndex contentIndex)
+    {
+        this.contentIndex = contentIndex;
     }
 
-    public String[][] getPackageTable()
+    /**
+     * Set the settings used to read the classes.
+     *
+     * @param settings The settings of the run
+     */
+    public void setSettings(CounterSettings settings)
     {
-        String[][] packageTableArray = new String[packageTable.size()][7];
+        this.settings = settings;
+    }
 
-        for(int i = 0; i < packageTable.size(); i++)
-        {
-            packageTableArray[i] = packageTable.get(i);
-        }
+    /**
+     * Set the statistics of the run: the classes read
+     * by the visitor are recorded.
+     *
+     * @param statistics The statistics, or null
+     */
+    public void setStatistics(RunStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Set the progress of the run: each class visited is
+     * counted as done.
+     *
+     * @param progress The progress, or null
+     */
+    public void setProgress(ProgressReporter progress)
+    {
+        this.progress = progress;
+    }
+
+    /**
+     * Set the classes to measure. The other classes are ignored.
+     *
+     * @param classFilter Accept the path of a class, relative to the root,
+     *                    or null to measure every class
+     */
+    public void setClassFilter(Predicate<Path> classFilter)
+    {
+        this.classFilter = classFilter;
+    }
+
+    /**
+     * @return Time spent reading the classes, or waiting
+     *         for the classes measured in advance (ns)
+     */
+    public long getClassNanos()
+    {
+        return classNanos;
+    }
 
-        return packageTableArray;
+    /**
+     * Set a sink that receives the metrics of each class and
+     * package as numbers, in the same order as the tables.
+     *
+     * @param metricsSink The sink, or null
+     */
+    public void setMetricsSink(MetricsSink metricsSink)
+    {
+        this.metricsSink = metricsSink;
     }
 
     /**
@@ -212,28 +351,16 @@ public class ClassCounterVisitor implements FileVisitor<Path>
      */
     private void countClass(String className, String classPath, Path file) throws IOException
     {
-        String[] line = new String[7];
-
         //Count
-        ClassCounter counter = new ClassCounter(file.toString());
         try
         {
             //Read
-            counter.read();
+            long start = System.nanoTime();
+            ClassCounter counter = readClass(file);
+            classNanos += System.nanoTime() - start;
 
-            //Make sure no count is zero
-            int loc = counter.getLOC();
-            int cloc = counter.getCLOC();
-            int wmc = counter.getWMC();
-            float dc = loc==0? 0 : ((float) cloc / loc);
-            float bc = loc==0 || wmc==0? 0 : ((float) cloc / (loc*wmc));
-
-            //Put the counts in the maps
-            classLOC.put(className, loc);
-            classCLOC.put(className, cloc);
-            classDC.put(className, dc);
-            classWMC.put(className, wmc);
-            classBC.put(className, bc);
+            classMetrics.set(classPath, className,
+                    counter.getLOC(), counter.getCLOC(), counter.getWMC());
         }
         catch(Exception e)
         {
@@ -241,60 +368,137 @@ public class ClassCounterVisitor implements FileVisitor<Path>
         }
 
         //Create the entry for the csv
-        line[0] = classPath;
-        line[1] = className;
-        line[2] = classLOC.get(className).toString();
-        line[3] = classCLOC.get(className).toString();
-        line[4] = classDC.get(className).toString();
-        line[5] = classWMC.get(className).toString();
-        line[6] = classBC.get(className).toString();
-        classTable.add(line);
+        classMetrics.writeRow(classTable);
+        if(metricsSink != null)
+        {
+            metricsSink.writeClass(classPath, className, currentPackage.toString(),
+                    classMetrics.getLOC(), classMetrics.getCLOC(), classMetrics.getDC(),
+                    classMetrics.getWMC(), classMetrics.getBC());
+        }
+        packageTree.addClass(classMetrics.getLOC(), classMetrics.getCLOC(),
+                classMetrics.getWMC());
     }
 
     /**
-     * Count the different value for a given package. </br>
-     * Folder without java classe inside are not considered
-     * package.
+     * Return the counter of the given class, after it was read. </br>
+     * The counter is taken from the pending classes if the class
+     * was measured in advance.
      *
-     * @param pkgName The name of the package
-     * @param pkgPath The path of the package
+     * @param file Absolute path of the class file
+     * @return The counter of the class
+     * @throws Exception If the class can't be read
      */
-    private void countPackage(String pkgName, String pkgPath)
+    private ClassCounter readClass(Path file) throws Exception
     {
-        String[] line = new String[7];
-        boolean isPackage = false;
+        Future<ClassCounter> pending = pendingClasses == null ? null : pendingClasses.remove(file);
+        if(pending != null)
+        {
+            try
+            {
+                return pending.get();
+            }
+            catch(ExecutionException e)
+            {
+                //Throw the error of the counter, as if it was read here
+                if(e.getCause() instanceof Error)
+                {
+                    throw (Error) e.getCause();
+                }
+                throw (Exception) e.getCause();
+            }
+        }
 
-        //Count
-        int loc = 0;
-        int cloc = 0;
-        int wcp = 0;
+        return readClass(file, cache, contentIndex, settings, statistics);
+    }
 
-        for(String[] classEntry : classTable)
-        {
-            String classPath = classEntry[0];
-            String className = classEntry[1];
+    /**
+     * Read a class (or take it from the cache, or from a class
+     * with the same content). </br>
+     * A class that is read is recorded in the statistics
+     * and as a JFR event ({@link ClassMeasuredEvent}).
+     *
+     * @param file Absolute path of the class file
+     * @param cache The cache, or null
+     * @param contentIndex The content index of the run, or null
+     * @param settings The settings of the run
+     * @param statistics The statistics of the run, or null
+     * @return The counter of the class
+     * @throws IOException If the class can't be read
+     */
+    static ClassCounter readClass(Path file, MetricsCache cache, ContentIndex contentIndex,
+                                  CounterSettings settings, RunStatistics statistics) throws IOException
+    {
+        long allocated = RunStatistics.threadAllocatedBytes();
+        ClassMeasuredEvent event = new ClassMeasuredEvent();
+        event.begin();
 
-            //Not recursive
-            if(isInPackage(pkgName, className))
-            {
-                loc += classLOC.get(className);
-                cloc += classCLOC.get(className);
+        ClassCounter counter;
+        if(cache != null)
+        {
+            counter = cache.count(file, contentIndex, settings);
+        }
+        else if(contentIndex != null)
+        {
+            counter = contentIndex.count(file, settings);
+        }
+        else
+        {
+            counter = new ClassCounter(file, settings);
+            counter.read();
+        }
 
-                isPackage = true;
-            }
+        if(counter.isRead())
+        {
+            allocated = allocated == -1 ? -1 : RunStatistics.threadAllocatedBytes() - allocated;
 
-            //Recursive
-            if(className.startsWith(pkgName))
+            event.end();
+            if(event.shouldCommit())
             {
-                wcp += classWMC.get(className);
-
-                isPackage = true;
+                event.path = file.toString();
+                event.loadTime = counter.getLoadNanos();
+                event.countTime = counter.getCountNanos();
+                event.allocated = allocated;
+                event.loc = counter.getLOC();
+                event.cloc = counter.getCLOC();
+                event.wmc = counter.getWMC();
+                event.degraded = counter.isDegraded();
+                event.commit();
             }
         }
 
+        if(statistics != null)
+        {
+            statistics.addClass(file, counter, allocated);
+        }
+        return counter;
+    }
+
+    /**
+     * Count the different value for a given package. </br>
+     * Folder without java classe inside are not considered
+     * package.
+     * </p>
+     * The loc and cloc are the sum of the classes of the package,
+     * the wcp is the sum of the wmc of the classes of the package
+     * and of all its sub-packages.
+     *
+     * @param pkgName The name of the package
+     * @param pkgPath The path of the package
+     * @param pkg The package, in the package tree (already exited)
+     * @throws IOException If the row can't be written
+     */
+    private void countPackage(String pkgName, String pkgPath, PackageTree.Node pkg) throws IOException
+    {
+        String[] line = new String[7];
+
         //Empty package and other folder are ignored
-        if(isPackage)
+        if(pkg.hasClasses())
         {
+            //Count
+            int loc = pkg.getLOC();
+            int cloc = pkg.getCLOC();
+            int wcp = pkg.getWCP();
+
             float dc = loc==0? 0 : ((float) cloc / loc);
             float bc = loc==0 || wcp==0? 0 : ((float) cloc / (loc*wcp));
 
@@ -306,28 +510,27 @@ public class ClassCounterVisitor implements FileVisitor<Path>
             line[4] = String.valueOf(dc);
             line[5] = String.valueOf(wcp);
             line[6] = String.valueOf(bc);
-            packageTable.add(line);
+            packageTable.writeRow(line);
+
+            if(metricsSink != null)
+            {
+                metricsSink.writePackage(pkgPath, pkgName, loc, cloc, dc, wcp, bc);
+            }
         }
     }
 
     /**
-     * Check if a classe is in a package.
+     * Return the path of the parent of the given directory,
+     * relative to root. </br>
+     * The root of an archive has no parent: its own path is used.
      *
-     * @param pkg The name of the package
-     * @param cl The name of the class
-     * @return True if the class is in the package, false otherwise
+     * @param dir The directory
+     * @return Relative (to root) path of the parent
      */
-    private boolean isInPackage(String pkg, String cl)
+    private Path parentPackage(Path dir)
     {
-        if(cl.startsWith(pkg))
-        {
-            String[] pkgArray = pkg.split("\\.");
-            String[] clArray = cl.split("\\.");
-
-            return clArray.length == (pkgArray.length + 1);
-        }
-
-        return false;
+        Path parent = dir.getParent();
+        return root.relativize(parent == null ? dir : parent);
     }
 
     /**
@@ -0,0 +1,51 @@
+package counters;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a class that was read and measured
+ * (the classes taken from the cache have no event).
+ * </br>
+ * The duration of the event is the time spent reading
+ * the class, loading and counting included.
+ */
+@Name("counters.ClassMeasured")
+@Label("Class Measured")
+@Category("Metrics")
+@Description("A class was read and measured")
+final class ClassMeasuredEvent extends Event
+{
+    @Label("Path")
+    String path;
+
+    @Label("Load Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long loadTime;
+
+    @Label("Count Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long countTime;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+
+    @Label("LOC")
+    int loc;
+
+    @Label("CLOC")
+    int cloc;
+
+    @Label("WMC")
+    int wmc;
+
+    @Label("Degraded")
+    @Description("Counted in degraded mode (time budget or stack exceeded)")
+    boolean degraded;
+}
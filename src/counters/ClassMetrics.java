@@ -0,0 +1,98 @@
+package counters;
+
+import io.RowSink;
+
+import java.io.IOException;
+
+/**
+ * The metrics of the class being measured, as numbers.
+ * </br>
+ * The visitor reuses the same instance for every class: the
+ * row of a class is written as soon as it is measured, so
+ * nothing is kept once the next class is set. The density
+ * and the complexity are computed once, for the table, the
+ * {@link MetricsSink} and the package tree.
+ * <p/>
+ * The numbers are only formatted when the row is written.
+ */
+public class ClassMetrics
+{
+    private String path;
+    private String name;
+    private int loc;
+    private int cloc;
+    private int wmc;
+    private float dc;
+    private float bc;
+
+    /**
+     * Set the class, replacing the previous one.
+     *
+     * @param path The path of the class
+     * @param name The name of the class
+     * @param loc Lines of code
+     * @param cloc Lines of comment
+     * @param wmc Weighted methods per class
+     */
+    public void set(String path, String name, int loc, int cloc, int wmc)
+    {
+        this.path = path;
+        this.name = name;
+        this.loc = loc;
+        this.cloc = cloc;
+        this.wmc = wmc;
+        this.dc = loc==0? 0 : ((float) cloc / loc);
+        this.bc = loc==0 || wmc==0? 0 : ((float) cloc / (loc*wmc));
+    }
+
+    /**
+     * Write the row of the class: {path, name, loc, cloc, dc, wmc, bc}.
+     *
+     * @param table Receive the row
+     * @throws IOException If the row can't be written
+     */
+    public void writeRow(RowSink table) throws IOException
+    {
+        table.writeRow(
+                path, name,
+                Integer.toString(loc), Integer.toString(cloc),
+                Float.toString(dc), Integer.toString(wmc),
+                Float.toString(bc)
+        );
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getLOC()
+    {
+        return loc;
+    }
+
+    public int getCLOC()
+    {
+        return cloc;
+    }
+
+    public int getWMC()
+    {
+        return wmc;
+    }
+
+    public float getDC()
+    {
+        return dc;
+    }
+
+    public float getBC()
+    {
+        return bc;
+    }
+}
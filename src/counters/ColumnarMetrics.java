@@ -0,0 +1,103 @@
+package counters;
+
+import io.ColumnType;
+import io.ColumnarWriter;
+
+import java.io.IOException;
+
+/**
+ * A {@link MetricsSink} that writes the metrics into a binary
+ * columnar file (see {@link ColumnarWriter}), alongside the csv.
+ * </br>
+ * The file has two tables, {@link #CLASS_TABLE} and {@link #PACKAGE_TABLE},
+ * with the columns of the csv files. The classes also have the
+ * path of their package ({@link #PACKAGE_COLUMN}), which refers to
+ * the same dictionary entry as the path of the package.
+ * <p/>
+ * The file can be loaded with {@link io.ColumnarReader}.
+ */
+public class ColumnarMetrics implements MetricsSink
+{
+    public static final String CLASS_TABLE = "classes";
+    public static final String PACKAGE_TABLE = "paquets";
+    public static final String PACKAGE_COLUMN = "paquet";
+
+    private static final String[] CLASS_COLUMNS = {
+            "chemin", "classe", PACKAGE_COLUMN,
+            "classe_LOC", "classe_CLOC",
+            "classe_DC", "WMC",
+            "classe_BC"
+    };
+    private static final ColumnType[] CLASS_TYPES = {
+            ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+            ColumnType.INT, ColumnType.INT,
+            ColumnType.FLOAT, ColumnType.INT,
+            ColumnType.FLOAT
+    };
+    private static final String[] PACKAGE_COLUMNS = {
+            "chemin", "paquet",
+            "paquet_LOC", "paquet_CLOC",
+            "paquet_DC", "WCP",
+            "paquet_BC"
+    };
+    private static final ColumnType[] PACKAGE_TYPES = {
+            ColumnType.STRING, ColumnType.STRING,
+            ColumnType.INT, ColumnType.INT,
+            ColumnType.FLOAT, ColumnType.INT,
+            ColumnType.FLOAT
+    };
+
+    private final ColumnarWriter writer;
+    private final ColumnarWriter.Table classTable;
+    private final ColumnarWriter.Table packageTable;
+
+    /**
+     * @param filePath The file to write
+     * @param isCompressed True to compress the file with gzip
+     */
+    public ColumnarMetrics(String filePath, boolean isCompressed)
+    {
+        writer = new ColumnarWriter(filePath, isCompressed);
+        classTable = writer.addTable(CLASS_TABLE, CLASS_COLUMNS, CLASS_TYPES);
+        packageTable = writer.addTable(PACKAGE_TABLE, PACKAGE_COLUMNS, PACKAGE_TYPES);
+    }
+
+    @Override
+    public void writeClass(String path, String name, String pkgPath,
+                           int loc, int cloc, float dc, int wmc, float bc)
+    {
+        classTable.setString(0, path);
+        classTable.setString(1, name);
+        classTable.setString(2, pkgPath);
+        classTable.setInt(3, loc);
+        classTable.setInt(4, cloc);
+        classTable.setFloat(5, dc);
+        classTable.setInt(6, wmc);
+        classTable.setFloat(7, bc);
+        classTable.endRow();
+    }
+
+    @Override
+    public void writePackage(String path, String name,
+                             int loc, int cloc, float dc, int wcp, float bc)
+    {
+        packageTable.setString(0, path);
+        packageTable.setString(1, name);
+        packageTable.setInt(2, loc);
+        packageTable.setInt(3, cloc);
+        packageTable.setFloat(4, dc);
+        packageTable.setInt(5, wcp);
+        packageTable.setFloat(6, bc);
+        packageTable.endRow();
+    }
+
+    /**
+     * Write the file (replaced atomically).
+     *
+     * @throws IOException If I/O errors occur
+     */
+    public void write() throws IOException
+    {
+        writer.write();
+    }
+}
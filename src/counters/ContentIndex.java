@@ -0,0 +1,180 @@
+package counters;
+
+import io.FileLoader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An index of the content of the classes read during a run.
+ * </br>
+ * The classes with the same content (vendored copies, generated
+ * classes, ...) have the same metrics: each content is only
+ * counted once, by the first class that has it, and the other
+ * classes get its metrics (degraded if it was counted in degraded
+ * mode, see {@link ClassCounter#isDegraded()}). The content is identified by its
+ * SHA-256, computed on the bytes loaded for the count (see {@link FileLoader#loadBytes(Path)}),
+ * so each file is still read only once.
+ * <p/>
+ * Only the metrics of each content are kept, under the first
+ * 128 bits of its SHA-256: the index doesn't keep the classes.
+ * <p/>
+ * The files larger than the streaming size (see
+ * {@link CounterSettings#setStreamingSize(long)}) are not loaded,
+ * so they are always counted.
+ * <p/>
+ * This class is thread-safe. Two classes with the same content
+ * read at the same time by two threads are both counted.
+ */
+public class ContentIndex
+{
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(ContentIndex::newDigest);
+
+    //Metrics of the first class of each content
+    private final ConcurrentHashMap<Digest, Metrics> contents = new ConcurrentHashMap<>();
+
+    private final AtomicInteger duplicates = new AtomicInteger();
+
+    /**
+     * Return the counter of the given class. </br>
+     * The class is only counted if no other class with
+     * the same content was counted during the run.
+     *
+     * @param file Path of the class file
+     * @param settings The settings of the run
+     * @return The counter of the class (already read)
+     * @throws IOException If the class can't be read
+     */
+    public ClassCounter count(Path file, CounterSettings settings) throws IOException
+    {
+        if(Files.size(file) > settings.getStreamingSize())
+        {
+            ClassCounter counter = new ClassCounter(file, settings);
+            counter.read();
+            return counter;
+        }
+
+        ByteBuffer content = FileLoader.loadBytes(file);
+        return count(file, content, hash(content), settings);
+    }
+
+    /**
+     * Return the counter of the given class, like {@link #count(Path, CounterSettings)},
+     * with its content already loaded and hashed (see {@link MetricsCache}).
+     *
+     * @param file Path of the class file
+     * @param content The bytes of the file (see {@link FileLoader#loadBytes(Path)})
+     * @param hash The SHA-256 of the content (see {@link #hash(ByteBuffer)})
+     * @param settings The settings of the run
+     * @return The counter of the class (already read)
+     * @throws IOException If the class can't be read
+     */
+    public ClassCounter count(Path file, ByteBuffer content, byte[] hash, CounterSettings settings) throws IOException
+    {
+        Digest digest = new Digest(hash);
+        Metrics known = contents.get(digest);
+        if(known != null)
+        {
+            duplicates.incrementAndGet();
+            return new ClassCounter(file, known.loc, known.cloc, known.wmc, known.isDegraded);
+        }
+
+        ClassCounter counter = new ClassCounter(file, settings);
+        counter.read(content);
+
+        contents.putIfAbsent(digest, new Metrics(counter));
+        return counter;
+    }
+
+    /**
+     * @return Number of classes that had the same content
+     *         as a class already counted
+     */
+    public int getDuplicates()
+    {
+        return duplicates.get();
+    }
+
+    /**
+     * Compute the SHA-256 of a content. </br>
+     * The position of the buffer doesn't change.
+     *
+     * @param content The content
+     * @return The hash (32 bytes)
+     */
+    static byte[] hash(ByteBuffer content)
+    {
+        MessageDigest digest = SHA_256.get();
+        digest.update(content.duplicate());
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The identifier of a content: the first 128 bits of its SHA-256.
+     */
+    private static class Digest
+    {
+        private final long high;
+        private final long low;
+
+        private Digest(byte[] hash)
+        {
+            ByteBuffer bytes = ByteBuffer.wrap(hash);
+            this.high = bytes.getLong(0);
+            this.low = bytes.getLong(8);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(this == o) return true;
+            if(!(o instanceof Digest)) return false;
+
+            Digest digest = (Digest) o;
+            return high == digest.high && low == digest.low;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(high ^ low);
+        }
+    }
+
+    /**
+     * The metrics of a content.
+     */
+    private static class Metrics
+    {
+        private final int loc;
+        private final int cloc;
+        private final int wmc;
+        private final boolean isDegraded;
+
+        private Metrics(ClassCounter counter)
+        {
+            this.loc = counter.getLOC();
+            this.cloc = counter.getCLOC();
+            this.wmc = counter.getWMC();
+            this.isDegraded = counter.isDegraded();
+        }
+    }
+}
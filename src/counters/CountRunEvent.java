@@ -0,0 +1,53 @@
+package counters;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a whole run of the counters, with the
+ * time of each phase (see {@link RunStatistics}).
+ */
+@Name("counters.CountRun")
+@Label("Count Run")
+@Category("Metrics")
+@Description("The classes and packages of a project were measured")
+final class CountRunEvent extends Event
+{
+    @Label("Project")
+    String project;
+
+    @Label("Measured Classes")
+    long measuredClasses;
+
+    @Label("Cached Classes")
+    long cachedClasses;
+
+    @Label("Deduplicated Classes")
+    @Description("Classes with the same content as a class already measured")
+    long deduplicatedClasses;
+
+    @Label("Walk Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long walkTime;
+
+    @Label("Load Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long loadTime;
+
+    @Label("Count Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long countTime;
+
+    @Label("Write Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long writeTime;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+}
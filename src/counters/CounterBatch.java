@@ -0,0 +1,159 @@
+package counters;
+
+import io.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * This class is used to measure many projects in
+ * the same process, one after the other.
+ * </br>
+ * The projects are listed in a manifest, with the folder of
+ * their csv files. The JVM, the compiled grammar (see
+ * {@link ClassCounter#GRAMMAR}) and the threads that measure
+ * the classes (see {@link CounterController#setSharedExecutor(ExecutorService)})
+ * are shared by all the projects.
+ * <p/>
+ * Manifest: one project per line, the fields separated by a tab.
+ * The empty lines and the lines starting with # are ignored.
+ * <pre>
+ *     project_path TAB output_path
+ * </pre>
+ * The relative paths are relative to the folder of the manifest.
+ * The output folders are created if needed. With a cache or a
+ * report (relative paths), each project has its own, in its
+ * output folder.
+ * <p/>
+ * A project that fails is reported, and the batch goes on
+ * with the next one.
+ */
+public class CounterBatch
+{
+    private final Path manifestPath;
+    private final Consumer<CounterController> configuration;    //Options of each controller
+
+    private final List<String> failures = new ArrayList<>();    //project: error, of each failed project
+    private int projects = 0;                                   //Number of projects of the manifest
+
+    /**
+     * @param manifestPath The manifest of the projects
+     * @param configuration Apply the options to the controller of each project
+     */
+    public CounterBatch(Path manifestPath, Consumer<CounterController> configuration)
+    {
+        this.manifestPath = manifestPath;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Measure every project of the manifest.
+     *
+     * @return The number of projects that failed
+     * @throws IOException If the manifest can't be read
+     */
+    public int count() throws IOException
+    {
+        List<String> lines = Files.readAllLines(manifestPath, StandardCharsets.UTF_8);
+        Path folder = manifestPath.toAbsolutePath().getParent();
+        long start = System.nanoTime();
+        failures.clear();
+        projects = 0;
+
+        ExecutorService executorService = null;
+        try
+        {
+            for(int i = 0; i < lines.size(); i++)
+            {
+                String line = lines.get(i).strip();
+                if(line.isEmpty() || line.startsWith("#")) continue;
+
+                projects++;
+                String[] fields = line.split("\t");
+                String project = fields[0];
+                try
+                {
+                    if(fields.length != 2)
+                    {
+                        throw new IllegalArgumentException("Wrong line " + (i + 1)
+                                + " in the manifest. Should be: project_path TAB output_path");
+                    }
+
+                    //Check the project before creating its output folder
+                    Path projectPath = folder.resolve(project.strip());
+                    if(!Files.exists(projectPath))
+                    {
+                        throw new IllegalArgumentException("The project " + projectPath + " does not exist");
+                    }
+
+                    Path outputPath = folder.resolve(fields[1].strip());
+                    Files.createDirectories(outputPath);
+                    CounterController controller = new CounterController(projectPath.toString(), outputPath.toString());
+                    configuration.accept(controller);
+                    if(controller.getCachePath() != null)
+                    {
+                        controller.setCachePath(outputPath.resolve(controller.getCachePath()).toString());
+                    }
+                    if(controller.getReportPath() != null)
+                    {
+                        controller.setReportPath(outputPath.resolve(controller.getReportPath()).toString());
+                    }
+
+                    //Same options for every project: the first one creates the threads
+                    if(executorService == null && controller.getThreads() > 1)
+                    {
+                        executorService = controller.getExecutor()
+                                .create(controller.getThreads(), controller.getStackSize());
+                    }
+                    controller.setSharedExecutor(executorService);
+
+                    Log.info("Project " + project);
+                    controller.count();
+                }
+                catch(IOException | RuntimeException e)
+                {
+                    Log.error("Project failed: " + project + ": " + e);
+                    failures.add(project + ": " + e.getMessage());
+                }
+            }
+        }
+        finally
+        {
+            if(executorService != null)
+            {
+                executorService.shutdownNow();
+            }
+        }
+
+        Log.info(String.format(Locale.ROOT, "Batch: %d projects measured, %d failed in %.1f s",
+                projects - failures.size(), failures.size(), (System.nanoTime() - start) / 1e9));
+        for(String failure : failures)
+        {
+            Log.error("\tFailed: " + failure);
+        }
+        return failures.size();
+    }
+
+    /**
+     * @return The failed projects of the last batch (project: error)
+     */
+    public List<String> getFailures()
+    {
+        return failures;
+    }
+
+    /**
+     * @return The number of projects of the last batch
+     */
+    public int getProjects()
+    {
+        return projects;
+    }
+}
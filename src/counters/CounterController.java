@@ -1,11 +1,36 @@
 package counters;
 
 import io.CSVWriter;
+import io.Log;
+import io.RowSink;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 /**
  * This class is used to mesure different metrics for
@@ -17,12 +42,78 @@ import java.nio.file.Paths;
  *
  * The measures for each class and package are written
  * into csv files.
+ *
+ * </p>
+ *
+ * With more than one thread, the classes are measured in
+ * parallel by a {@link CounterExecutor}. The csv files are
+ * the same as with a single thread.
+ *
+ * </p>
+ *
+ * The project can also be an archive (zip, jar or sources
+ * jar): its classes are read without extracting it.
+ *
+ * </p>
+ *
+ * The measures can also be written into a binary columnar
+ * file (see {@link ColumnarMetrics}).
+ *
+ * </p>
+ *
+ * The metrics can also be measured at each commit of the
+ * git history of the project (see {@link GitHistory}).
+ *
+ * </p>
+ *
+ * The classes are counted with a time budget (see {@link #setTimeBudget(long)})
+ * and can be counted on threads with a larger stack (see {@link #setStackSize(long)}):
+ * the classes that exceed them are counted in degraded mode.
+ *
+ * </p>
+ *
+ * A large project can be split into shards measured by separate
+ * processes (see {@link #countSharded(int, IntFunction)}): each one
+ * writes a {@link PartialResult}, then the partial results are
+ * merged into the csv files (see {@link #merge(int)}).
+ *
+ * </p>
+ *
+ * In watch mode, the project is measured again after each
+ * change, reusing the metrics of the unchanged classes.
  */
 public class CounterController
 {
+    /**
+     * The binary columnar file written alongside the csv
+     * (see {@link ColumnarMetrics}).
+     */
+    public enum BinaryOutput
+    {
+        NONE,
+        RAW,                //metrics.bin
+        GZIP                //metrics.bin.gz
+    }
+
     private final Path projectPath;                 //Path of the project
     private final Path outputPath;                  //Path to output the csv
 
+    private int threads = 1;                        //Number of threads used to measure the classes
+    private CounterExecutor executor = CounterExecutor.FORK_JOIN;
+    private Path cachePath = null;                  //File of the metrics cache (no cache if null)
+    private boolean isLongHistory = false;          //History in one long table instead of a folder per commit
+    private BinaryOutput binaryOutput = BinaryOutput.NONE;
+    private Path reportPath = null;                 //File of the JSON report of the run (no report if null)
+    private int topFiles = RunStatistics.DEFAULT_TOP_FILES;    //Slowest classes in the report
+    private long stackSize = 0;                     //Stack size of the threads that count (default if 0)
+    private Set<String> files = null;               //Classes to measure, relative to the project with '/' (all if null)
+    private ExecutorService sharedExecutor = null;  //Executor shared with other controllers (own executor if null)
+    private int shard = 0;                          //Shard measured by this process (see PartialResult)
+    private int shards = 0;                         //Number of shards, 0 to measure the whole project
+    private PathFilter pathFilter = new PathFilter();   //Folders and files visited (include, exclude, .gitignore)
+    private final CounterSettings settings = new CounterSettings();     //Charset, time budget and streaming size
+    private boolean isProgressTotal = false;        //Count the classes first, for the ETA of a single thread run
+
     public CounterController(String projectPath, String outputPath)
     {
         this.projectPath = Paths.get(projectPath);
@@ -46,33 +137,864 @@ public class CounterController
      */
     public void count () throws IOException
     {
-        //Read through the entire project
-        ClassCounterVisitor visitor = new ClassCounterVisitor(projectPath);
-        Files.walkFileTree(projectPath, visitor);
+        runWithStack(() -> {
+            //Load the metrics of the previous run
+            MetricsCache cache = null;
+            if(cachePath != null)
+            {
+                cache = new MetricsCache(cachePath, settings.getCharset());
+                cache.load();
+            }
+
+            count(cache, null);
+
+            //Save the metrics for the next run
+            if(cache != null)
+            {
+                cache.save();
+                Log.info("Cache: " + cache.getHits() + " unchanged classes, "
+                        + cache.getMisses() + " classes measured");
+            }
+        });
+    }
+
+    /**
+     * Measure the metrics, then watch the project: each time
+     * files are created, modified or deleted, only those are
+     * measured again and the csv files are replaced.
+     * </br>
+     * Run until the thread is interrupted.
+     *
+     * @throws IOException If I/O errors occur
+     */
+    public void watch() throws IOException
+    {
+        runWithStack(() -> {
+            if(isArchive())
+            {
+                throw new IllegalArgumentException("Can't watch the archive " + projectPath);
+            }
+
+            //The metrics of the unchanged classes stay in memory
+            MetricsCache cache = new MetricsCache(cachePath, settings.getCharset());
+            cache.load();
+            cache.setWatched(true);
+
+            try(ProjectWatcher watcher = new ProjectWatcher(projectPath.toAbsolutePath()))
+            {
+                count(cache, null);
+                cache.save();
+
+                Set<Path> changedFiles = new HashSet<>();
+                while(true)
+                {
+                    changedFiles.clear();
+                    if(!watcher.awaitChanges(changedFiles))
+                    {
+                        cache.invalidateAll();          //Lost changes -> check every file
+                    }
+
+                    long start = System.nanoTime();
+                    for(Path file : changedFiles)
+                    {
+                        cache.invalidate(file);
+                    }
+
+                    cache.newRun();
+                    count(cache, null);
+                    cache.save();
+
+                    Log.info(String.format(Locale.ROOT, "Updated: %d classes measured in %.1f ms",
+                            cache.getMisses(), (System.nanoTime() - start) / 1e6));
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Measure the metrics with a cache kept by the caller
+     * between the runs (see {@link CounterDaemon}).
+     *
+     * @param cache The metrics cache
+     * @return The statistics of the run
+     * @throws IOException If I/O errors occur
+     */
+    RunStatistics countWithCache(MetricsCache cache) throws IOException
+    {
+        RunStatistics[] statistics = new RunStatistics[1];
+        runWithStack(() -> statistics[0] = count(cache, null));
+        return statistics[0];
+    }
+
+    /**
+     * Measure the project in shards, each one by a separate process,
+     * then merge their partial results into the csv files. </br>
+     * The processes run at the same time, and are given the shard
+     * they measure (they should call {@link #setShard(int, int)}).
+     *
+     * @param shards The number of shards
+     * @param workerCommand The command of the process of each shard
+     * @throws IOException If a process fails, or if I/O errors occur
+     */
+    public void countSharded(int shards, IntFunction<List<String>> workerCommand) throws IOException
+    {
+        if(shards < 1)
+        {
+            throw new IllegalArgumentException("The number of shards should be at least 1");
+        }
+
+        List<Process> workers = new ArrayList<>();
+        try
+        {
+            for(int i = 0; i < shards; i++)
+            {
+                Files.deleteIfExists(PartialResult.file(outputPath, i, shards));      //Left by a previous run
+                workers.add(new ProcessBuilder(workerCommand.apply(i)).inheritIO().start());
+            }
+
+            for(int i = 0; i < shards; i++)
+            {
+                int exitCode = workers.get(i).waitFor();
+                if(exitCode != 0)
+                {
+                    throw new IOException("The shard " + i + "/" + shards + " failed (exit code " + exitCode + ")");
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shards", e);
+        }
+        finally
+        {
+            workers.forEach(Process::destroy);                  //Only the ones still running
+        }
+
+        merge(shards);
+    }
+
+    /**
+     * Merge the partial results of the shards (written in the output
+     * folder) into the csv files. </br>
+     * The project is walked again, without reading the classes, so
+     * the rows are in the same order as with a single process and
+     * the packages sum the classes of every shard. A class missing
+     * from the partial results (added since) is read.
+     * <p/>
+     * The partial results are deleted once the csv files are written.
+     *
+     * @param shards The number of shards
+     * @throws IOException If a partial result is missing, doesn't match
+     *                     the project, or if I/O errors occur
+     */
+    public void merge(int shards) throws IOException
+    {
+        Map<String, int[]> classes = new HashMap<>();
+        for(int i = 0; i < shards; i++)
+        {
+            Path file = PartialResult.file(outputPath, i, shards);
+            if(!Files.exists(file))
+            {
+                throw new IOException("The partial result of the shard " + i + "/" + shards + " is missing: " + file);
+            }
+
+            PartialResult partial = PartialResult.load(file);
+            if(partial.getShard() != i || partial.getShards() != shards)
+            {
+                throw new IOException(file + " is the shard " + partial.getShard() + "/" + partial.getShards());
+            }
+            for(Map.Entry<String, int[]> entry : partial.getClasses().entrySet())
+            {
+                if(classes.put(entry.getKey(), entry.getValue()) != null)
+                {
+                    throw new IOException("The class " + entry.getKey() + " is in several shards");
+                }
+            }
+        }
+
+        runWithStack(() -> count(null, classes));
+
+        for(int i = 0; i < shards; i++)
+        {
+            Files.deleteIfExists(PartialResult.file(outputPath, i, shards));
+        }
+    }
+
+    /**
+     * Measure the metrics at each commit of the git history
+     * of the project (see {@link GitHistory}).
+     *
+     * @param revisions The revisions, as given to git rev-list (ex: HEAD, v1.0..main)
+     * @throws IOException If I/O errors occur, or if git fails
+     */
+    public void countHistory(String revisions) throws IOException
+    {
+        runWithStack(() -> {
+            if(isArchive())
+            {
+                throw new IllegalArgumentException("The archive " + projectPath + " has no history");
+            }
+
+            GitHistory history = new GitHistory(projectPath, outputPath);
+            history.setThreads(threads);
+            history.setExecutor(executor);
+            history.setStackSize(stackSize);
+            history.setLongFormat(isLongHistory);
+            history.setSettings(new CounterSettings(settings));
+            history.setPathFilter(pathFilter);
+            history.count(revisions);
+        });
+    }
+
+    /**
+     * Measure the metrics and replace the csv files. </br>
+     * An archive is walked in place, through the zip file system.
+     *
+     * @param cache The metrics cache, or null
+     * @param mergedClasses The metrics of the classes of the shards (see {@link #merge(int)}), or null
+     * @return The statistics of the run
+     * @throws IOException If I/O errors occur
+     */
+    private RunStatistics count(MetricsCache cache, Map<String, int[]> mergedClasses) throws IOException
+    {
+        if(!isArchive())
+        {
+            return count(projectPath, cache, mergedClasses);
+        }
+
+        FileSystem archive;
+        try
+        {
+            archive = FileSystems.newFileSystem(projectPath);
+        }
+        catch(ProviderNotFoundException e)
+        {
+            throw new IOException("The project " + projectPath + " is not a folder or an archive", e);
+        }
+
+        try(archive)
+        {
+            return count(archive.getPath("/"), cache, mergedClasses);
+        }
+    }
+
+    /**
+     * Measure the metrics of the project and replace the csv files. </br>
+     * With a shard, only its classes are measured and the partial
+     * result replaces the csv files.
+     *
+     * @param root Root folder of the project
+     * @param cache The metrics cache, or null
+     * @param mergedClasses The metrics of the classes of the shards, or null
+     * @return The statistics of the run
+     * @throws IOException If I/O errors occur
+     */
+    private RunStatistics count(Path root, MetricsCache cache, Map<String, int[]> mergedClasses) throws IOException
+    {
+        boolean isShard = shards > 0 && mergedClasses == null;
+
+        RunStatistics statistics = new RunStatistics(topFiles);
+        statistics.start();
+        ProgressReporter progress = new ProgressReporter();
+        progress.start();
+        ContentIndex contentIndex = new ContentIndex();         //Identical classes are counted once per run
+        CounterSettings runSettings = new CounterSettings(settings);    //Not changed during the run
+
+        //The csv are written during the visit
+        try(CSVWriter classWriter = new CSVWriter(outputPath.resolve("classes.csv").toString());
+            CSVWriter pkgWriter = new CSVWriter(outputPath.resolve("paquets.csv").toString()))
+        {
+            RowSink classTable = row -> {};
+            RowSink pkgTable = row -> {};
+            if(!isShard)
+            {
+                classWriter.open();
+                pkgWriter.open();
+                classTable = statistics.timed(classWriter);
+                pkgTable = statistics.timed(pkgWriter);
+            }
+
+            //Read through the entire project
+            ClassCounterVisitor visitor = new ClassCounterVisitor(root, classTable, pkgTable);
+            visitor.setCache(cache);
+            visitor.setStatistics(statistics);
+            visitor.setProgress(progress);
+            visitor.setClassFilter(classFilter());
+            visitor.setContentIndex(contentIndex);
+            visitor.setPathFilter(pathFilter);
+            visitor.setSettings(runSettings);
+            ColumnarMetrics binaryWriter = null;
+            PartialResult partial = null;
+            if(isShard)
+            {
+                partial = new PartialResult(shard, shards, root.getFileSystem());
+                visitor.setMetricsSink(partial);
+            }
+            else if(binaryOutput != BinaryOutput.NONE)
+            {
+                boolean isCompressed = binaryOutput == BinaryOutput.GZIP;
+                binaryWriter = new ColumnarMetrics(
+                        outputPath.resolve(isCompressed ? "metrics.bin.gz" : "metrics.bin").toString(), isCompressed);
+                visitor.setMetricsSink(binaryWriter);
+            }
+            if(mergedClasses != null)
+            {
+                //The classes are already measured
+                Map<Path, Future<ClassCounter>> pendingClasses = new HashMap<>();
+                for(Map.Entry<String, int[]> entry : mergedClasses.entrySet())
+                {
+                    Path file = root.resolve(entry.getKey());
+                    int[] metrics = entry.getValue();
+                    pendingClasses.put(file, CompletableFuture.completedFuture(
+                            new ClassCounter(file, metrics[0], metrics[1], metrics[2])));
+                }
+                visitor.setPendingClasses(pendingClasses);
+                progress.setTotalClasses(pendingClasses.size());
+
+                walk(root, visitor, statistics);
+                if(!pendingClasses.isEmpty())
+                {
+                    throw new IOException(pendingClasses.size() + " classes of the partial results are not in "
+                            + projectPath + " (ex: " + root.relativize(pendingClasses.keySet().iterator().next()) + ")");
+                }
+            }
+            else if(threads > 1)
+            {
+                ExecutorService executorService = sharedExecutor != null ? sharedExecutor
+                        : executor.create(threads, stackSize);
+                Map<Path, Future<ClassCounter>> pendingClasses = new HashMap<>();
+                try
+                {
+                    long start = System.nanoTime();
+                    submitClasses(root, executorService, cache, contentIndex, runSettings, statistics, pendingClasses);
+                    visitor.setPendingClasses(pendingClasses);
+                    progress.setTotalClasses(pendingClasses.size());
+                    statistics.addPhase(RunStatistics.Phase.WALK, System.nanoTime() - start);
+
+                    walk(root, visitor, statistics);
+                }
+                finally
+                {
+                    if(executorService != sharedExecutor)
+                    {
+                        executorService.shutdownNow();
+                    }
+                    else
+                    {
+                        //Leave the shared executor to the next project
+                        pendingClasses.values().forEach(pending -> pending.cancel(true));
+                    }
+                }
+            }
+            else
+            {
+                if(isProgressTotal)
+                {
+                    progress.countClasses(root, pathFilter);        //Walks the project a second time
+                }
+                walk(root, visitor, statistics);
+            }
+
+            //Replace the csv files (or the partial result)
+            long start = System.nanoTime();
+            if(isShard)
+            {
+                partial.save(PartialResult.file(outputPath, shard, shards));
+            }
+            else
+            {
+                classWriter.commit();
+                pkgWriter.commit();
+            }
+            if(binaryWriter != null)
+            {
+                binaryWriter.write();
+            }
+            statistics.addPhase(RunStatistics.Phase.WRITE, System.nanoTime() - start);
+        }
+        finally
+        {
+            progress.stop();
+        }
+
+        statistics.stop(projectPath.toString());
+        int degraded = statistics.getDegradedClasses().size();
+        if(degraded > 0)
+        {
+            Log.info(degraded + " classes counted in degraded mode (time, stack or window budget exceeded)");
+        }
+        if(contentIndex.getDuplicates() > 0)
+        {
+            Log.info(contentIndex.getDuplicates() + " classes with the same content as another class (counted once)");
+        }
+        if(reportPath != null)
+        {
+            statistics.writeReport(reportPath);
+        }
+        return statistics;
+    }
+
+    /**
+     * Run a task on a thread with the stack size, and wait
+     * until it ends. Without stack size, the task is run on
+     * the current thread.
+     *
+     * @param task The task
+     * @throws IOException If the task throws it
+     */
+    private void runWithStack(Task task) throws IOException
+    {
+        if(stackSize == 0)
+        {
+            task.run();
+            return;
+        }
+
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            task.run();
+            return null;
+        });
+        Thread thread = new Thread(null, future, "counter", stackSize);
+        thread.start();
+
+        try
+        {
+            future.get();
+        }
+        catch(InterruptedException e)
+        {
+            //Stop the task (ex: watch mode)
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            else if(e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Walk the project with the visitor. </br>
+     * The walk phase is the time of the walk, without reading
+     * the classes and writing the rows.
+     */
+    private static void walk(Path root, ClassCounterVisitor visitor, RunStatistics statistics) throws IOException
+    {
+        long writeNanos = statistics.getPhaseNanos(RunStatistics.Phase.WRITE);
+        long start = System.nanoTime();
+
+        Files.walkFileTree(root, visitor);
+
+        long walkNanos = System.nanoTime() - start - visitor.getClassNanos()
+                - (statistics.getPhaseNanos(RunStatistics.Phase.WRITE) - writeNanos);
+        statistics.addPhase(RunStatistics.Phase.WALK, walkNanos);
+    }
+
+    /**
+     * Start measuring every class of the project. </br>
+     * At most one class per thread is read at the same time.
+     *
+     * @param root Root folder of the project
+     * @param executorService The executor that measures the classes
+     * @param cache The metrics cache, or null
+     * @param contentIndex The content index of the run
+     * @param settings The settings of the run
+     * @param statistics The statistics of the run
+     * @param pendingClasses Receive the counter of each class (absolute path -> counter)
+     * @throws IOException If I/O errors occur
+     */
+    private void submitClasses(Path root, ExecutorService executorService, MetricsCache cache,
+                               ContentIndex contentIndex, CounterSettings settings, RunStatistics statistics,
+                               Map<Path, Future<ClassCounter>> pendingClasses) throws IOException
+    {
+        Semaphore permits = new Semaphore(threads);
+        Predicate<Path> classFilter = classFilter();
+        PathFilter.Walk walk = pathFilter.walk(root);
+
+        //Same walk as the visitor, but only submit the classes
+        Files.walkFileTree(root, new SimpleFileVisitor<>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+            {
+                return walk.enter(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+            {
+                if(file.toString().endsWith(".java") && walk.accept(file)
+                        && (classFilter == null || classFilter.test(root.relativize(file))))
+                {
+                    pendingClasses.put(file, executorService.submit(() -> {
+                        permits.acquire();
+                        try
+                        {
+                            return ClassCounterVisitor.readClass(file, cache, contentIndex, settings, statistics);
+                        }
+                        finally
+                        {
+                            permits.release();
+                        }
+                    }));
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc)
+            {
+                return FileVisitResult.CONTINUE;          //The visitor will handle it
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+            {
+                walk.exit();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * @return The filter of the classes to measure (path relative
+     *         to the root), or null to measure every class
+     */
+    private Predicate<Path> classFilter()
+    {
+        Set<String> classes = files;
+        int shard = this.shard;
+        int shards = this.shards;
+        if(classes == null && shards == 0) return null;
+
+        return file -> {
+            String path = PartialResult.relativePath(file);
+            return (classes == null || classes.contains(path))
+                    && (shards == 0 || PartialResult.shardOf(path, shards) == shard);
+        };
+    }
+
+    /**
+     * @return True if the project is an archive (zip, jar, sources jar)
+     *         instead of a folder
+     */
+    public boolean isArchive()
+    {
+        return Files.isRegularFile(projectPath);
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads used to measure the classes.
+     * With 1 thread, the classes are measured during the visit.
+     *
+     * @param threads Number of threads (at least 1)
+     */
+    public void setThreads(int threads)
+    {
+        if(threads < 1)
+        {
+            throw new IllegalArgumentException("The number of threads should be at least 1");
+        }
+
+        this.threads = threads;
+    }
+
+    public CounterExecutor getExecutor()
+    {
+        return executor;
+    }
+
+    public void setExecutor(CounterExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    public ExecutorService getSharedExecutor()
+    {
+        return sharedExecutor;
+    }
+
+    /**
+     * Measure the classes on an executor shared with other
+     * controllers (see {@link CounterBatch}), instead of creating
+     * one for each run. The controller doesn't shut it down. </br>
+     * Only used with more than one thread.
+     *
+     * @param sharedExecutor The executor, or null to create one for each run
+     */
+    public void setSharedExecutor(ExecutorService sharedExecutor)
+    {
+        this.sharedExecutor = sharedExecutor;
+    }
+
+    public int getShard()
+    {
+        return shard;
+    }
+
+    public int getShards()
+    {
+        return shards;
+    }
+
+    /**
+     * Only measure one shard of the project: the runs write its
+     * partial result (see {@link PartialResult}) in the output
+     * folder, instead of the csv files.
+     *
+     * @param shard The index of the shard (from 0)
+     * @param shards The number of shards, 0 to measure the whole project
+     */
+    public void setShard(int shard, int shards)
+    {
+        if(shards < 0 || (shards > 0 && (shard < 0 || shard >= shards)))
+        {
+            throw new IllegalArgumentException("Invalid shard " + shard + "/" + shards);
+        }
+
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    public PathFilter getPathFilter()
+    {
+        return pathFilter;
+    }
+
+    /**
+     * Set the folders and the files visited: the include and
+     * exclude globs, and the .gitignore files.
+     *
+     * @param pathFilter The filter
+     */
+    public void setPathFilter(PathFilter pathFilter)
+    {
+        this.pathFilter = pathFilter;
+    }
+
+    public Charset getCharset()
+    {
+        return settings.getCharset();
+    }
+
+    /**
+     * Set the charset of the source files.
+     *
+     * @param charset The charset, or null to detect it for each file
+     */
+    public void setCharset(Charset charset)
+    {
+        settings.setCharset(charset);
+    }
+
+    public long getStackSize()
+    {
+        return stackSize;
+    }
+
+    /**
+     * Set the stack size of the threads that count the
+     * classes. A class that overflows the stack is counted
+     * in degraded mode.
+     *
+     * @param stackSize The stack size in bytes, 0 for the default size of the JVM
+     */
+    public void setStackSize(long stackSize)
+    {
+        if(stackSize < 0)
+        {
+            throw new IllegalArgumentException("The stack size can't be negative");
+        }
+
+        this.stackSize = stackSize;
+    }
+
+    public long getTimeBudget()
+    {
+        return settings.getTimeBudget();
+    }
+
+    /**
+     * Set the time allowed to count a class. A class
+     * that exceeds it is counted in degraded mode.
+     *
+     * @param timeBudget The time budget in milliseconds, 0 for no limit
+     */
+    public void setTimeBudget(long timeBudget)
+    {
+        settings.setTimeBudget(timeBudget);
+    }
+
+    public long getStreamingSize()
+    {
+        return settings.getStreamingSize();
+    }
+
+    /**
+     * Set the size above which a class is read in streaming
+     * mode, with a bounded memory, instead of being loaded.
+     *
+     * @param streamingSize The size in bytes
+     */
+    public void setStreamingSize(long streamingSize)
+    {
+        settings.setStreamingSize(streamingSize);
+    }
+
+    public Set<String> getFiles()
+    {
+        return files;
+    }
+
+    /**
+     * Only measure some classes of the project. The csv files
+     * then only have these classes, and the packages that
+     * contain them.
+     *
+     * @param files The files of the classes, relative to the project
+     *              (or absolute), or null to measure every class
+     */
+    public void setFiles(Collection<String> files)
+    {
+        if(files == null)
+        {
+            this.files = null;
+            return;
+        }
 
-        //Create the csv file for classes
-        Path classCSV = outputPath.resolve("classes.csv");
-        if(!Files.exists(classCSV))
+        Path project = projectPath.toAbsolutePath().normalize();
+        Set<String> relativeFiles = new HashSet<>();
+        for(String file : files)
         {
-            Files.createFile(classCSV);
+            Path path = Paths.get(file);
+            if(path.isAbsolute())
+            {
+                path = project.relativize(path.normalize());
+            }
+            relativeFiles.add(PartialResult.relativePath(path.normalize()));
         }
+        this.files = relativeFiles;
+    }
 
-        //Write the csv for the classes
-        CSVWriter writer = new CSVWriter(classCSV.toString());
-        writer.setContent(visitor.getClassTable());
-        writer.write();
+    public String getCachePath()
+    {
+        return cachePath == null ? null : cachePath.toString();
+    }
 
-        //Create the csv file for package
-        Path pkgCSV = outputPath.resolve("paquets.csv");
-        if(!Files.exists(pkgCSV))
+    /**
+     * Set the file of the metrics cache. The classes that didn't
+     * change since the previous run are not read again.
+     *
+     * @param cachePath Path of the cache file, or null for no cache
+     */
+    public void setCachePath(String cachePath)
+    {
+        this.cachePath = cachePath == null ? null : Paths.get(cachePath);
+    }
+
+    public String getReportPath()
+    {
+        return reportPath == null ? null : reportPath.toString();
+    }
+
+    /**
+     * Set the file of the JSON report of each run (time of
+     * each phase, latency histogram, slowest classes, ...),
+     * see {@link RunStatistics}.
+     *
+     * @param reportPath Path of the report, or null for no report
+     */
+    public void setReportPath(String reportPath)
+    {
+        this.reportPath = reportPath == null ? null : Paths.get(reportPath);
+    }
+
+    public int getTopFiles()
+    {
+        return topFiles;
+    }
+
+    /**
+     * Set the number of slowest classes in the report.
+     *
+     * @param topFiles Number of classes (at least 0)
+     */
+    public void setTopFiles(int topFiles)
+    {
+        if(topFiles < 0)
         {
-            Files.createFile(pkgCSV);
+            throw new IllegalArgumentException("The number of slowest classes can't be negative");
         }
 
-        //Write the csv for the packages
-        writer = new CSVWriter(pkgCSV.toString());
-        writer.setContent(visitor.getPackageTable());
-        writer.write();
+        this.topFiles = topFiles;
+    }
+
+    public BinaryOutput getBinaryOutput()
+    {
+        return binaryOutput;
+    }
+
+    /**
+     * Set the binary columnar file written alongside the csv.
+     *
+     * @param binaryOutput The file to write, or NONE
+     */
+    public void setBinaryOutput(BinaryOutput binaryOutput)
+    {
+        this.binaryOutput = binaryOutput;
+    }
+
+    public boolean isLongHistory()
+    {
+        return isLongHistory;
+    }
+
+    /**
+     * Set the format of the history.
+     *
+     * @param isLongHistory True for one long table of all the commits,
+     *                      false for a folder per commit
+     */
+    public void setLongHistory(boolean isLongHistory)
+    {
+        this.isLongHistory = isLongHistory;
+    }
+
+    public boolean isProgressTotal()
+    {
+        return isProgressTotal;
+    }
+
+    /**
+     * Set if the classes are counted before a single thread run,
+     * so the progress shows the remaining time. The count walks
+     * the project a second time, in the background. With more
+     * than one thread, the total is always known.
+     *
+     * @param isProgressTotal True to count the classes first
+     */
+    public void setProgressTotal(boolean isProgressTotal)
+    {
+        this.isProgressTotal = isProgressTotal;
     }
 
     public String getProjectPath()
@@ -84,4 +1006,12 @@ public class CounterController
     {
         return outputPath.toString();
     }
+
+    /**
+     * A step of the controller that can throw an {@link IOException}.
+     */
+    private interface Task
+    {
+        void run() throws IOException;
+    }
 }
@@ -0,0 +1,281 @@
+package counters;
+
+import io.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A long-lived process that measures projects on request,
+ * through a Unix domain socket.
+ * </br>
+ * The JVM stays warm between the requests, and the metrics of
+ * each project are kept in memory (see {@link MetricsCache}):
+ * only the classes that changed since the previous request on
+ * the same project are read again.
+ * <p/>
+ * Protocol: one request per line, the fields separated by tabs.
+ * <pre>
+ *     request:  project_path TAB output_path [TAB file]...
+ *               stop
+ *     response: ok TAB classes TAB milliseconds
+ *               error TAB message
+ * </pre>
+ * The files are the classes to measure (relative to the project or
+ * absolute), every class is measured without files. The csv files
+ * are written in the output path, like {@link CounterController#count()}.
+ * A connection can send several requests, each one gets a response.
+ * <p/>
+ * Example: printf '/src/project\t/tmp/out\n' | nc -U metrics.sock
+ * <p/>
+ * The clients are served concurrently, the requests on the same
+ * project are served one at a time.
+ * <p/>
+ * The metrics of the projects requested least recently are forgotten
+ * when more projects are requested (see {@link #setMaxProjects(int)}),
+ * so the memory of the daemon stays bounded.
+ */
+public class CounterDaemon implements Closeable
+{
+    public static final String STOP = "stop";
+    public static final int DEFAULT_MAX_PROJECTS = 16;         //Projects whose metrics are kept
+
+    private final Path socketPath;
+    private final Consumer<CounterController> configuration;    //Options of each controller
+    private final ExecutorService clients;
+
+    //Metrics of each project (absolute path -> cache), kept between the requests, least recently used first
+    private final LinkedHashMap<Path, MetricsCache> caches = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile int maxProjects = DEFAULT_MAX_PROJECTS;
+
+    private volatile ServerSocketChannel server;
+
+    /**
+     * @param socketPath The file of the socket
+     * @param configuration Apply the options to the controller of each request
+     * @param clients Number of clients served at the same time
+     */
+    public CounterDaemon(Path socketPath, Consumer<CounterController> configuration, int clients)
+    {
+        if(clients < 1)
+        {
+            throw new IllegalArgumentException("The number of clients should be at least 1");
+        }
+
+        this.socketPath = socketPath;
+        this.configuration = configuration;
+        this.clients = Executors.newFixedThreadPool(clients, task -> {
+            Thread thread = new Thread(task, "daemon-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Accept the clients until the daemon is stopped (by a
+     * stop request or {@link #close()}).
+     *
+     * @throws IOException If the socket can't be opened
+     */
+    public void serve() throws IOException
+    {
+        Files.deleteIfExists(socketPath);                   //Left by a previous daemon
+
+        try(ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX))
+        {
+            channel.bind(UnixDomainSocketAddress.of(socketPath));
+            server = channel;
+            Log.info("Listening on " + socketPath);
+
+            while(true)
+            {
+                SocketChannel client;
+                try
+                {
+                    client = channel.accept();
+                }
+                catch(ClosedChannelException e)
+                {
+                    break;                                  //Stopped (during or between two accepts)
+                }
+
+                clients.execute(() -> serve(client));
+            }
+        }
+        finally
+        {
+            clients.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    /**
+     * Stop accepting the clients.
+     *
+     * @throws IOException If the socket can't be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        ServerSocketChannel channel = server;
+        if(channel != null)
+        {
+            channel.close();
+        }
+    }
+
+    public int getMaxProjects()
+    {
+        return maxProjects;
+    }
+
+    /**
+     * Set the number of projects whose metrics are kept in memory.
+     * The metrics of the project requested least recently are
+     * forgotten first: its next request measures every class.
+     *
+     * @param maxProjects The number of projects
+     */
+    public void setMaxProjects(int maxProjects)
+    {
+        if(maxProjects < 1)
+        {
+            throw new IllegalArgumentException("The number of projects should be at least 1");
+        }
+
+        this.maxProjects = maxProjects;
+    }
+
+    /**
+     * Return the cache of a project, and forget the caches
+     * of the projects requested least recently. </br>
+     * A cache counted with another charset is replaced.
+     *
+     * @param project The absolute path of the project
+     * @param charset The charset of the request, or null if detected
+     * @return The cache of the project
+     */
+    private MetricsCache cache(Path project, Charset charset)
+    {
+        synchronized(caches)
+        {
+            MetricsCache cache = caches.get(project);
+            if(cache == null || !Objects.equals(cache.getCharset(), charset))
+            {
+                cache = new MetricsCache(null, charset);
+                caches.put(project, cache);
+            }
+
+            for(Iterator<Path> projects = caches.keySet().iterator(); caches.size() > maxProjects;)
+            {
+                Path eldest = projects.next();
+                projects.remove();
+                Log.info("Forgetting the metrics of " + eldest);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Answer the requests of a client, until it closes
+     * the connection.
+     *
+     * @param client The connection of the client
+     */
+    private void serve(SocketChannel client)
+    {
+        try(client;
+            BufferedReader input = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+            Writer output = Channels.newWriter(client, StandardCharsets.UTF_8))
+        {
+            String request;
+            while((request = input.readLine()) != null)
+            {
+                if(request.isBlank()) continue;
+                if(request.equals(STOP))
+                {
+                    output.write("ok\n");
+                    output.flush();
+                    close();
+                    return;
+                }
+
+                output.write(answer(request));
+                output.flush();
+            }
+        }
+        catch(IOException e)
+        {
+            Log.error("Client lost: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Measure the project of a request.
+     *
+     * @param request The request (project TAB output [TAB file]...)
+     * @return The response line
+     */
+    private String answer(String request)
+    {
+        long start = System.nanoTime();
+        String[] fields = request.split("\t");
+        try
+        {
+            if(fields.length < 2)
+            {
+                throw new IllegalArgumentException("Wrong request. Should be: project_path TAB output_path [TAB file]...");
+            }
+
+            CounterController controller = new CounterController(fields[0], fields[1]);
+            configuration.accept(controller);
+            if(fields.length > 2)
+            {
+                controller.setFiles(Arrays.asList(fields).subList(2, fields.length));
+            }
+
+            //One request at a time on a project (its cache and its csv files)
+            MetricsCache cache = cache(Paths.get(fields[0]).toAbsolutePath().normalize(), controller.getCharset());
+            RunStatistics statistics;
+            synchronized(cache)
+            {
+                cache.newRun();
+                statistics = controller.countWithCache(cache);
+            }
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            long classes = statistics.getMeasuredClasses() + statistics.getCachedClasses()
+                    + statistics.getDeduplicatedClasses();
+            Log.info(String.format(Locale.ROOT, "Served %s: %d classes (%d measured) in %d ms",
+                    fields[0], classes, statistics.getMeasuredClasses(), millis));
+            return "ok\t" + classes + "\t" + millis + "\n";
+        }
+        catch(IOException | RuntimeException e)
+        {
+            Log.error("Request failed: " + request.replace('\t', ' ') + ": " + e);
+            String message = String.valueOf(e.getMessage()).replace('\n', ' ').replace('\r', ' ');
+            return "error\t" + message + "\n";
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package counters;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors that can be used to measure the classes
+ * of a project in parallel.
+ */
+public enum CounterExecutor
+{
+    /**
+     * A work-stealing {@link ForkJoinPool}. </br>
+     * Best when the files are already in the disk cache.
+     */
+    FORK_JOIN,
+
+    /**
+     * One virtual thread per class (java 21+). </br>
+     * Best for slow disks, where most of the time is spent
+     * waiting for the files. On older java versions, a pool
+     * of platform threads is used instead.
+     */
+    VIRTUAL_THREADS;
+
+    /**
+     * Create a new executor of this type.
+     *
+     * @param threads The number of threads (ignored by virtual threads)
+     * @return A new executor
+     */
+    public ExecutorService create(int threads)
+    {
+        return create(threads, 0);
+    }
+
+    /**
+     * Create a new executor of this type, with threads that
+     * have the given stack size. </br>
+     * The stack size can't be set on the threads of a {@link ForkJoinPool}:
+     * with a stack size, a fixed pool of platform threads is used instead.
+     * The stack size is ignored by virtual threads.
+     *
+     * @param threads The number of threads (ignored by virtual threads)
+     * @param stackSize The stack size of the threads in bytes, 0 for the default size
+     * @return A new executor
+     */
+    public ExecutorService create(int threads, long stackSize)
+    {
+        if(this == VIRTUAL_THREADS)
+        {
+            try
+            {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            }
+            catch(ReflectiveOperationException e)
+            {
+                //Virtual threads are not available
+            }
+        }
+        else if(stackSize == 0)
+        {
+            return new ForkJoinPool(threads);
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads,
+                task -> new Thread(null, task, "counter-" + count.incrementAndGet(), stackSize));
+    }
+
+    /**
+     * Return the executor with the given name
+     * (fork-join or virtual).
+     *
+     * @param name The name of the executor
+     * @return The executor
+     */
+    public static CounterExecutor fromName(String name)
+    {
+        switch(name)
+        {
+            case "fork-join":
+                return FORK_JOIN;
+            case "virtual":
+                return VIRTUAL_THREADS;
+            default:
+                throw new IllegalArgumentException("Unknown executor " + name +
+                        ". Should be: fork-join or virtual");
+        }
+    }
+}
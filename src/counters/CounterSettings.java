@@ -0,0 +1,99 @@
+package counters;
+
+import io.FileLoader;
+
+import java.nio.charset.Charset;
+
+/**
+ * The settings used to read the classes of a run:
+ * charset, time budget and streaming size.
+ * </br>
+ * Each {@link CounterController} has its own settings, given to
+ * every {@link ClassCounter} of its runs, so the projects measured
+ * in the same JVM (see {@link CounterBatch} and {@link CounterDaemon})
+ * don't share them.
+ */
+public class CounterSettings
+{
+    public static final long DEFAULT_TIME_BUDGET = 10000;  //Time allowed to count a class (ms)
+    public static final long DEFAULT_STREAMING_SIZE = 16 * 1024 * 1024;     //Larger files are streamed (bytes)
+
+    private Charset charset = null;                         //Charset of the files (null: detected)
+    private long timeBudget = DEFAULT_TIME_BUDGET;          //ms, no limit if 0
+    private long streamingSize = DEFAULT_STREAMING_SIZE;
+
+    public CounterSettings()
+    {
+    }
+
+    /**
+     * Copy settings.
+     *
+     * @param settings The settings to copy
+     */
+    public CounterSettings(CounterSettings settings)
+    {
+        this.charset = settings.charset;
+        this.timeBudget = settings.timeBudget;
+        this.streamingSize = settings.streamingSize;
+    }
+
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * Set the charset used to read the files of
+     * every class.
+     *
+     * @param charset The charset, or null to detect it for each file
+     *                (see {@link FileLoader})
+     */
+    public void setCharset(Charset charset)
+    {
+        this.charset = charset;
+    }
+
+    public long getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    /**
+     * Set the time allowed to count the metrics of a class. </br>
+     * After this time, the class is counted in degraded mode.
+     *
+     * @param timeBudget The time budget in milliseconds, 0 for no limit
+     */
+    public void setTimeBudget(long timeBudget)
+    {
+        if(timeBudget < 0)
+        {
+            throw new IllegalArgumentException("The time budget can't be negative");
+        }
+
+        this.timeBudget = timeBudget;
+    }
+
+    public long getStreamingSize()
+    {
+        return streamingSize;
+    }
+
+    /**
+     * Set the size above which a file is read in streaming
+     * mode, instead of being loaded in memory.
+     *
+     * @param streamingSize The size in bytes
+     */
+    public void setStreamingSize(long streamingSize)
+    {
+        if(streamingSize < 0)
+        {
+            throw new IllegalArgumentException("The streaming size can't be negative");
+        }
+
+        this.streamingSize = streamingSize;
+    }
+}
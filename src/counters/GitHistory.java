@@ -0,0 +1,629 @@
+package counters;
+
+import io.CSVWriter;
+import io.FileLoader;
+import io.Log;
+import io.RowSink;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This class is used to measure the metrics of a project
+ * at each commit of its git history.
+ * </br>
+ * The files are never checked out: the trees and the blobs are
+ * read from the object store of the local repository (with the
+ * git command). A version of a class (a blob) is measured only
+ * once, and reused by all the commits that contain it.
+ * <p/>
+ * The commits are the first-parent history of the revisions,
+ * from the oldest to the newest. The metrics of each commit are
+ * written in a folder named after the commit (classes.csv and
+ * paquets.csv), or all in a long table (history_classes.csv and
+ * history_paquets.csv) where each row starts with the commit and
+ * its date.
+ * <p/>
+ * The {@link PathFilter} selects the classes of each commit as it
+ * would in a checkout, with the .gitignore files of the commit.
+ */
+public class GitHistory
+{
+    private final Path projectPath;                 //Folder of the project, inside the repository
+    private final Path outputPath;                  //Path to output the csv
+
+    private int threads = 1;                        //Number of threads used to measure the classes
+    private CounterExecutor executor = CounterExecutor.FORK_JOIN;
+    private boolean isLongFormat = false;           //One long table instead of a folder per commit
+    private long stackSize = 0;                     //Stack size of the threads that count (default if 0)
+    private CounterSettings settings = new CounterSettings();   //Charset, time budget and streaming size
+    private PathFilter pathFilter = null;           //Folders and files measured, all if null
+
+    //Counter of each version of a class (blob id -> counter), shared by the commits
+    private final HashMap<String, Future<ClassCounter>> versions = new HashMap<>();
+
+    public GitHistory(Path projectPath, Path outputPath)
+    {
+        this.projectPath = projectPath;
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * Measure the metrics at each commit of the revisions.
+     *
+     * @param revisions The revisions, as given to git rev-list (ex: HEAD, v1.0..main)
+     * @throws IOException If I/O errors occur, or if git fails
+     */
+    public void count(String revisions) throws IOException
+    {
+        //"<timestamp> <commit>" from the oldest to the newest
+        List<String> commits = lines(git("rev-list", "--reverse", "--first-parent", "--timestamp",
+                revisions, "--"));
+
+        ExecutorService executorService = threads > 1 ? executor.create(threads, stackSize) : null;
+        try(BlobReader blobReader = new BlobReader();
+            CSVWriter classWriter = isLongFormat ? new CSVWriter(outputPath.resolve("history_classes.csv").toString()) : null;
+            CSVWriter pkgWriter = isLongFormat ? new CSVWriter(outputPath.resolve("history_paquets.csv").toString()) : null)
+        {
+            if(isLongFormat)
+            {
+                classWriter.open();
+                pkgWriter.open();
+            }
+
+            boolean isFirstCommit = true;
+            for(String line : commits)
+            {
+                int separator = line.indexOf(' ');
+                String date = Instant.ofEpochSecond(Long.parseLong(line.substring(0, separator))).toString();
+                String commit = line.substring(separator + 1);
+
+                if(isLongFormat)
+                {
+                    countCommit(commit, blobReader, executorService,
+                            new CommitRowSink(classWriter, commit, date, isFirstCommit),
+                            new CommitRowSink(pkgWriter, commit, date, isFirstCommit));
+                }
+                else
+                {
+                    countCommit(commit, blobReader, executorService);
+                }
+                isFirstCommit = false;
+            }
+
+            if(isLongFormat)
+            {
+                classWriter.commit();
+                pkgWriter.commit();
+            }
+        }
+        finally
+        {
+            if(executorService != null)
+            {
+                executorService.shutdownNow();
+            }
+        }
+
+        Log.info("History: " + commits.size() + " commits, "
+                + versions.size() + " versions of classes measured");
+    }
+
+    /**
+     * Measure a commit into its own folder.
+     */
+    private void countCommit(String commit, BlobReader blobReader,
+                             ExecutorService executorService) throws IOException
+    {
+        Path commitPath = Files.createDirectories(outputPath.resolve(commit));
+
+        try(CSVWriter classWriter = new CSVWriter(commitPath.resolve("classes.csv").toString());
+            CSVWriter pkgWriter = new CSVWriter(commitPath.resolve("paquets.csv").toString()))
+        {
+            classWriter.open();
+            pkgWriter.open();
+
+            countCommit(commit, blobReader, executorService, classWriter, pkgWriter);
+
+            classWriter.commit();
+            pkgWriter.commit();
+        }
+    }
+
+    /**
+     * Measure the classes of a commit. </br>
+     * The tree of the commit is visited by a {@link ClassCounterVisitor},
+     * as if it was checked out in the project folder.
+     *
+     * @param commit The commit
+     * @param blobReader Reader of the blobs
+     * @param executorService The executor that measures the classes, or null
+     * @param classTable Receive the row of each class
+     * @param packageTable Receive the row of each package
+     * @throws IOException If I/O errors occur
+     */
+    private void countCommit(String commit, BlobReader blobReader, ExecutorService executorService,
+                             RowSink classTable, RowSink packageTable) throws IOException
+    {
+        Folder root = new Folder(projectPath);
+        boolean isGitIgnore = pathFilter != null && pathFilter.isGitIgnore();
+
+        //Entries of the tree: "<mode> <type> <blob>\t<path>", relative to the project folder
+        for(String entry : git("ls-tree", "-r", "-z", commit).split("\0"))
+        {
+            int tab = entry.indexOf('\t');
+            if(tab == -1 || !entry.startsWith("100"))
+            {
+                continue;                               //Not a file (or a symbolic link)
+            }
+
+            String[] object = entry.substring(0, tab).split(" ");
+            String relativePath = entry.substring(tab + 1);
+            if(relativePath.endsWith(".java")
+                    || isGitIgnore && (relativePath.equals(".gitignore") || relativePath.endsWith("/.gitignore")))
+            {
+                root.add(relativePath, object[2]);
+            }
+        }
+
+        //Same classes as in a checkout
+        if(pathFilter != null)
+        {
+            root.filter(pathFilter.walk(projectPath), blobReader);
+        }
+
+        Map<Path, String> files = new LinkedHashMap<>();
+        root.files(files);
+
+        Map<Path, Future<ClassCounter>> classes = new HashMap<>();
+        int measured = 0;
+        for(Map.Entry<Path, String> file : files.entrySet())
+        {
+            //Measure each version only once
+            String blob = file.getValue();
+            Future<ClassCounter> counter = versions.get(blob);
+            if(counter == null)
+            {
+                counter = measure(file.getKey(), blobReader.read(blob), settings, executorService);
+                versions.put(blob, counter);
+                measured++;
+            }
+            classes.put(file.getKey(), counter);
+        }
+
+        Log.info("Commit " + commit + ": " + classes.size() + " classes, "
+                + measured + " new versions measured");
+
+        ClassCounterVisitor visitor = new ClassCounterVisitor(projectPath, classTable, packageTable);
+        visitor.setPendingClasses(classes);
+        root.visit(visitor);
+    }
+
+    /**
+     * Measure a version of a class.
+     *
+     * @param file Path of the class in the project folder
+     * @param content Content of the class
+     * @param settings The settings of the run
+     * @param executorService The executor that measures the class, or null
+     * @return The counter of the class
+     */
+    private static Future<ClassCounter> measure(Path file, byte[] content, CounterSettings settings,
+                                                ExecutorService executorService)
+    {
+        if(executorService != null)
+        {
+            return executorService.submit(() -> measure(file, content, settings));
+        }
+
+        try
+        {
+            return CompletableFuture.completedFuture(measure(file, content, settings));
+        }
+        catch(IOException e)
+        {
+            return CompletableFuture.failedFuture(e);     //Thrown by the visitor, as for a file
+        }
+    }
+
+    private static ClassCounter measure(Path file, byte[] content, CounterSettings settings) throws IOException
+    {
+        ClassCounter counter = new ClassCounter(file, settings);
+        counter.read(FileLoader.decode(content, settings.getCharset()));
+        return counter;
+    }
+
+    /**
+     * Run a git command in the project folder.
+     *
+     * @param args The arguments of the command
+     * @return The output of the command
+     * @throws IOException If the command fails
+     */
+    private String git(String... args) throws IOException
+    {
+        Process process = start(args);
+        byte[] output;
+        try(InputStream input = process.getInputStream())
+        {
+            output = input.readAllBytes();
+        }
+
+        try
+        {
+            int exitCode = process.waitFor();
+            if(exitCode != 0)
+            {
+                throw new IOException("git " + args[0] + " failed with the exit code " + exitCode);
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for git " + args[0]);
+        }
+
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+    private Process start(String... args) throws IOException
+    {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("-C");
+        command.add(projectPath.toString());
+        command.addAll(List.of(args));
+
+        return new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private static List<String> lines(String text)
+    {
+        List<String> lines = new ArrayList<>();
+        for(String line : text.split("\n"))
+        {
+            if(!line.isEmpty())
+            {
+                lines.add(line);
+            }
+        }
+
+        return lines;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads used to measure the classes.
+     *
+     * @param threads Number of threads (at least 1)
+     */
+    public void setThreads(int threads)
+    {
+        if(threads < 1)
+        {
+            throw new IllegalArgumentException("The number of threads should be at least 1");
+        }
+
+        this.threads = threads;
+    }
+
+    public CounterExecutor getExecutor()
+    {
+        return executor;
+    }
+
+    public void setExecutor(CounterExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    public long getStackSize()
+    {
+        return stackSize;
+    }
+
+    /**
+     * Set the stack size of the threads that count the classes
+     * (see {@link CounterExecutor#create(int, long)}).
+     *
+     * @param stackSize The stack size in bytes, 0 for the default size
+     */
+    public void setStackSize(long stackSize)
+    {
+        this.stackSize = stackSize;
+    }
+
+    public boolean isLongFormat()
+    {
+        return isLongFormat;
+    }
+
+    /**
+     * Set the format of the output.
+     *
+     * @param isLongFormat True for one long table of all the commits,
+     *                     false for a folder per commit
+     */
+    public void setLongFormat(boolean isLongFormat)
+    {
+        this.isLongFormat = isLongFormat;
+    }
+
+    public CounterSettings getSettings()
+    {
+        return settings;
+    }
+
+    /**
+     * Set the settings used to read the classes
+     * (charset, time budget).
+     *
+     * @param settings The settings
+     */
+    public void setSettings(CounterSettings settings)
+    {
+        this.settings = settings;
+    }
+
+    public PathFilter getPathFilter()
+    {
+        return pathFilter;
+    }
+
+    /**
+     * Set the folders and the files measured at each commit.
+     *
+     * @param pathFilter The filter, or null to measure every class
+     */
+    public void setPathFilter(PathFilter pathFilter)
+    {
+        this.pathFilter = pathFilter;
+    }
+
+    /**
+     * Reads the content of the blobs with a single
+     * git cat-file process.
+     */
+    private class BlobReader implements Closeable
+    {
+        private final Process process;
+        private final OutputStream requests;
+        private final InputStream responses;
+
+        private BlobReader() throws IOException
+        {
+            process = start("cat-file", "--batch");
+            requests = process.getOutputStream();
+            responses = new BufferedInputStream(process.getInputStream());
+        }
+
+        /**
+         * Read the content of a blob.
+         *
+         * @param blob The id of the blob
+         * @return The content of the blob
+         * @throws IOException If the blob can't be read
+         */
+        private byte[] read(String blob) throws IOException
+        {
+            requests.write((blob + "\n").getBytes(StandardCharsets.US_ASCII));
+            requests.flush();
+
+            //"<blob> blob <size>", then the content and a newline
+            String[] header = readLine().split(" ");
+            if(header.length != 3 || !header[1].equals("blob"))
+            {
+                throw new IOException("Can't read the blob " + blob);
+            }
+
+            byte[] content = responses.readNBytes(Integer.parseInt(header[2]));
+            if(content.length != Integer.parseInt(header[2]) || responses.read() != '\n')
+            {
+                throw new EOFException("Incomplete blob " + blob);
+            }
+
+            return content;
+        }
+
+        private String readLine() throws IOException
+        {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c = responses.read();
+            while(c != '\n')
+            {
+                if(c == -1)
+                {
+                    throw new EOFException("git cat-file stopped");
+                }
+
+                line.write(c);
+                c = responses.read();
+            }
+
+            return line.toString(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            requests.close();
+            responses.close();
+            process.destroy();
+        }
+    }
+
+    /**
+     * A folder of the tree of a commit.
+     */
+    private static class Folder
+    {
+        private final Path path;                                        //As if checked out
+        private final TreeMap<String, Folder> folders = new TreeMap<>();
+        private final LinkedHashMap<Path, String> files = new LinkedHashMap<>();    //Class -> blob
+        private String gitIgnore = null;                                //Blob of the .gitignore
+
+        private Folder(Path path)
+        {
+            this.path = path;
+        }
+
+        /**
+         * Add a class (or a .gitignore), and its folders.
+         *
+         * @param relativePath Path of the file, relative to this folder ('/' separated)
+         * @param blob The blob of the file
+         */
+        private void add(String relativePath, String blob)
+        {
+            int separator = relativePath.indexOf('/');
+            if(separator == -1 && relativePath.equals(".gitignore"))
+            {
+                gitIgnore = blob;
+            }
+            else if(separator == -1)
+            {
+                files.put(path.resolve(relativePath), blob);
+            }
+            else
+            {
+                String name = relativePath.substring(0, separator);
+                folders.computeIfAbsent(name, n -> new Folder(path.resolve(n)))
+                        .add(relativePath.substring(separator + 1), blob);
+            }
+        }
+
+        /**
+         * Remove the folders and the classes that the filter skips,
+         * as {@link ClassCounterVisitor} would in a checkout.
+         *
+         * @param walk The walk of the filter
+         * @param blobReader Reader of the .gitignore files
+         * @return False if the whole folder is skipped
+         * @throws IOException If a .gitignore can't be read
+         */
+        private boolean filter(PathFilter.Walk walk, BlobReader blobReader) throws IOException
+        {
+            String ignore = gitIgnore == null ? null : new String(blobReader.read(gitIgnore), StandardCharsets.UTF_8);
+            if(!walk.enter(path, ignore))
+            {
+                return false;
+            }
+
+            files.keySet().removeIf(file -> !walk.accept(file));
+            for(Iterator<Folder> folder = folders.values().iterator(); folder.hasNext();)
+            {
+                if(!folder.next().filter(walk, blobReader))
+                {
+                    folder.remove();
+                }
+            }
+
+            walk.exit();
+            return true;
+        }
+
+        /**
+         * Collect the classes of the folder and of its sub-folders,
+         * in the order of the visit.
+         *
+         * @param classes Receive the classes (path -> blob)
+         */
+        private void files(Map<Path, String> classes)
+        {
+            classes.putAll(files);
+            for(Folder folder : folders.values())
+            {
+                folder.files(classes);
+            }
+        }
+
+        /**
+         * Visit the folder as {@link java.nio.file.Files#walkFileTree} would.
+         */
+        private void visit(ClassCounterVisitor visitor) throws IOException
+        {
+            visitor.preVisitDirectory(path, null);
+            for(Path file : files.keySet())
+            {
+                visitor.visitFile(file, null);
+            }
+            for(Folder folder : folders.values())
+            {
+                folder.visit(visitor);
+            }
+            visitor.postVisitDirectory(path, null);
+        }
+    }
+
+    /**
+     * A {@link RowSink} that starts each row with the commit and
+     * its date. Only the first header of the table is written.
+     */
+    private static class CommitRowSink implements RowSink
+    {
+        private final RowSink table;
+        private final String commit;
+        private final String date;
+        private boolean isHeader = true;            //The first row is the header
+        private final boolean isFirstCommit;        //Only the first commit writes the header
+
+        private CommitRowSink(RowSink table, String commit, String date, boolean isFirstCommit)
+        {
+            this.table = table;
+            this.commit = commit;
+            this.date = date;
+            this.isFirstCommit = isFirstCommit;
+        }
+
+        @Override
+        public void writeRow(String... row) throws IOException
+        {
+            String[] line = new String[row.length + 2];
+            if(isHeader)
+            {
+                isHeader = false;
+                if(!isFirstCommit)
+                {
+                    return;                         //Already written by a previous commit
+                }
+
+                line[0] = "commit";
+                line[1] = "date";
+            }
+            else
+            {
+                line[0] = commit;
+                line[1] = date;
+            }
+
+            System.arraycopy(row, 0, line, 2, row.length);
+            table.writeRow(line);
+        }
+    }
+}
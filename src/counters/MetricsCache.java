@@ -0,0 +1,435 @@
+package counters;
+
+import io.AtomicFile;
+import io.FileLoader;
+import io.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of the metrics of each class, saved on disk
+ * between the runs.
+ * </br>
+ * An entry is identified by the path of the class. It is
+ * still valid if the size and the last modification time of
+ * the file didn't change, or if its content (SHA-256) didn't
+ * change.
+ * <p/>
+ * The cache is emptied when {@link ClassCounter#VERSION} changes, or
+ * when the files are read with another charset (see {@link CounterSettings#setCharset(Charset)}):
+ * both are written in the header of the file.
+ * <p/>
+ * Without a file, the cache only lives in memory. While the
+ * files are watched (see {@link ProjectWatcher}), an entry is
+ * trusted without checking its file until it is invalidated.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class MetricsCache
+{
+    private static final int MAGIC = 0x4D434349;           //Identify a cache file (with its charset)
+
+    private final Path cachePath;                           //The file of the cache (in memory if null)
+    private final Charset charset;                          //Charset of the files counted (null: detected)
+
+    //Entries loaded from the file, and entries used during this run (only those are saved)
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> usedEntries = new ConcurrentHashMap<>();
+
+    //Entries whose file is watched and didn't change
+    private final Set<String> trustedEntries = ConcurrentHashMap.newKeySet();
+    private volatile boolean isWatched = false;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param cachePath The file of the cache, or null to keep it in memory
+     * @param charset The charset used to read the classes, or null if it is
+     *                detected for each file
+     */
+    public MetricsCache(Path cachePath, Charset charset)
+    {
+        this.cachePath = cachePath;
+        this.charset = charset;
+    }
+
+    /**
+     * Load the cache from its file. </br>
+     * A missing, corrupted or outdated cache file gives
+     * an empty cache.
+     */
+    public void load()
+    {
+        entries.clear();
+        trustedEntries.clear();
+        if(cachePath == null) return;
+
+        try(DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(cachePath))))
+        {
+            if(input.readInt() != MAGIC || input.readInt() != ClassCounter.VERSION
+                    || !input.readUTF().equals(charsetName()))
+            {
+                return;                                     //Outdated cache, or other charset -> empty
+            }
+
+            int size = input.readInt();
+            for(int i = 0; i < size; i++)
+            {
+                String key = input.readUTF();
+                Entry entry = new Entry(input.readLong(), input.readLong(), input.readUTF(),
+                        input.readInt(), input.readInt(), input.readInt());
+                entries.put(key, entry);
+            }
+        }
+        catch(NoSuchFileException e)
+        {
+            //First run -> empty
+        }
+        catch(IOException e)
+        {
+            Log.error("Ignoring the cache " + cachePath + ": " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Save the entries used during this run into the
+     * file of the cache. </br>
+     * The file is replaced atomically.
+     *
+     * @throws IOException If I/O errors occur
+     */
+    public void save() throws IOException
+    {
+        if(cachePath == null) return;
+
+        Path temp = AtomicFile.createTemp(cachePath);
+
+        try
+        {
+            try(DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(ClassCounter.VERSION);
+                output.writeUTF(charsetName());
+                output.writeInt(usedEntries.size());
+
+                for(Map.Entry<String, Entry> usedEntry : usedEntries.entrySet())
+                {
+                    Entry entry = usedEntry.getValue();
+                    output.writeUTF(usedEntry.getKey());
+                    output.writeLong(entry.size);
+                    output.writeLong(entry.modified);
+                    output.writeUTF(entry.hash);
+                    output.writeInt(entry.loc);
+                    output.writeInt(entry.cloc);
+                    output.writeInt(entry.wmc);
+                }
+            }
+
+            AtomicFile.commit(temp, cachePath);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Return the counter of the given class. </br>
+     * The class is only read if it isn't in the cache or
+     * if it changed since it was cached.
+     *
+     * @param file Path of the class file
+     * @param settings The settings of the run
+     * @return The counter of the class (already read)
+     * @throws IOException If the class can't be read
+     */
+    public ClassCounter count(Path file, CounterSettings settings) throws IOException
+    {
+        return count(file, null, settings);
+    }
+
+    /**
+     * Return the counter of the given class, like {@link #count(Path, CounterSettings)}. </br>
+     * A class that is not in the cache is counted through the
+     * index, so it can take the metrics of a class with the same
+     * content.
+     *
+     * @param file Path of the class file
+     * @param index The content index of the run, or null
+     * @param settings The settings of the run
+     * @return The counter of the class (already read)
+     * @throws IOException If the class can't be read
+     */
+    public ClassCounter count(Path file, ContentIndex index, CounterSettings settings) throws IOException
+    {
+        String key = key(file);
+
+        //Watched and unchanged -> no need to check the file
+        Entry trusted = trustedEntries.contains(key) ? entries.get(key) : null;
+        if(trusted != null)
+        {
+            hits.incrementAndGet();
+            usedEntries.put(key, trusted);
+            return new ClassCounter(file, trusted.loc, trusted.cloc, trusted.wmc);
+        }
+
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+
+        //Content of the file, read once for the hash and the count (null if not read yet)
+        ByteBuffer content = null;
+        byte[] contentHash = null;
+
+        //Check the cached entry
+        Entry entry = entries.get(key);
+        String hash = null;
+        if(entry != null && entry.size == size && entry.modified != modified)
+        {
+            //Touched but maybe not modified -> compare the content
+            if(index != null && size <= settings.getStreamingSize())
+            {
+                content = FileLoader.loadBytes(file);
+                contentHash = ContentIndex.hash(content);
+                hash = HexFormat.of().formatHex(contentHash);
+            }
+            else
+            {
+                hash = hash(file);
+            }
+            entry = hash.equals(entry.hash) ? entry.withModified(modified) : null;
+        }
+        else if(entry != null && entry.size != size)
+        {
+            entry = null;
+        }
+
+        ClassCounter counter;
+        if(entry != null)
+        {
+            hits.incrementAndGet();
+            counter = new ClassCounter(file, entry.loc, entry.cloc, entry.wmc);
+        }
+        else
+        {
+            misses.incrementAndGet();
+            if(index != null && size <= settings.getStreamingSize())
+            {
+                if(content == null)
+                {
+                    content = FileLoader.loadBytes(file);
+                    contentHash = ContentIndex.hash(content);
+                    hash = HexFormat.of().formatHex(contentHash);
+                }
+                counter = index.count(file, content, contentHash, settings);
+            }
+            else
+            {
+                if(hash == null)
+                {
+                    hash = hash(file);
+                }
+                counter = new ClassCounter(file, settings);        //Streamed (or no index) -> always counted
+                counter.read();
+            }
+            if(counter.isDegraded())
+            {
+                //Not cached: the next run may have a larger budget
+                entries.remove(key);
+                return counter;
+            }
+            entry = new Entry(size, modified, hash,
+                    counter.getLOC(), counter.getCLOC(), counter.getWMC());
+        }
+
+        entries.put(key, entry);
+        usedEntries.put(key, entry);
+        if(isWatched)
+        {
+            trustedEntries.add(key);
+        }
+        return counter;
+    }
+
+    /**
+     * Start a new run: forget the entries used and the
+     * statistics of the previous run.
+     */
+    public void newRun()
+    {
+        usedEntries.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Forget the entries of a file that changed, or of all
+     * the files of a folder.
+     *
+     * @param path Path of the file or folder
+     */
+    public void invalidate(Path path)
+    {
+        String key = key(path);
+        String folderKey = key.endsWith(path.getFileSystem().getSeparator())
+                ? key : key + path.getFileSystem().getSeparator();
+
+        entries.keySet().removeIf(entry -> entry.equals(key) || entry.startsWith(folderKey));
+        trustedEntries.removeIf(entry -> entry.equals(key) || entry.startsWith(folderKey));
+    }
+
+    /**
+     * Stop trusting the watched entries: their files are checked
+     * again (some changes were lost).
+     */
+    public void invalidateAll()
+    {
+        trustedEntries.clear();
+    }
+
+    public boolean isWatched()
+    {
+        return isWatched;
+    }
+
+    /**
+     * Set if the files are watched. The entries of watched files
+     * are trusted until they are invalidated.
+     *
+     * @param isWatched True if the files are watched
+     */
+    public void setWatched(boolean isWatched)
+    {
+        this.isWatched = isWatched;
+        if(!isWatched)
+        {
+            trustedEntries.clear();
+        }
+    }
+
+    /**
+     * @return Number of classes taken from the cache
+     */
+    public int getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of classes read
+     */
+    public int getMisses()
+    {
+        return misses.get();
+    }
+
+    public Path getCachePath()
+    {
+        return cachePath;
+    }
+
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * @return The name of the charset in the header ("" if detected)
+     */
+    private String charsetName()
+    {
+        return charset == null ? "" : charset.name();
+    }
+
+    /**
+     * The key of a file: its absolute path, or its URI if the
+     * file is inside an archive (the archive is part of the key).
+     */
+    private static String key(Path file)
+    {
+        Path path = file.toAbsolutePath().normalize();
+        return path.getFileSystem() == FileSystems.getDefault() ? path.toString() : path.toUri().toString();
+    }
+
+    /**
+     * Compute the SHA-256 of the content of a file.
+     *
+     * @param file The file
+     * @return The hash, in hexadecimal
+     * @throws IOException If I/O errors occur
+     */
+    private static String hash(Path file) throws IOException
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try(InputStream input = new DigestInputStream(Files.newInputStream(file), digest))
+            {
+                byte[] buffer = new byte[8192];
+                while(input.read(buffer) != -1)
+                {
+                    //Reading updates the digest
+                }
+            }
+
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A cached class: the state of its file and its metrics.
+     */
+    private static class Entry
+    {
+        private final long size;            //Size of the file
+        private final long modified;        //Last modification time (ms)
+        private final String hash;          //SHA-256 of the content
+        private final int loc;
+        private final int cloc;
+        private final int wmc;
+
+        private Entry(long size, long modified, String hash, int loc, int cloc, int wmc)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.loc = loc;
+            this.cloc = cloc;
+            this.wmc = wmc;
+        }
+
+        private Entry withModified(long modified)
+        {
+            return new Entry(size, modified, hash, loc, cloc, wmc);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package counters;
+
+import java.io.IOException;
+
+/**
+ * Receive the metrics of each class and package, as numbers
+ * (see {@link ClassCounterVisitor#setMetricsSink(MetricsSink)}).
+ */
+public interface MetricsSink
+{
+    /**
+     * A class was measured.
+     *
+     * @param path The path of the class
+     * @param name The name of the class
+     * @param pkgPath The path of the package of the class
+     * @param loc Lines of code
+     * @param cloc Lines of comment
+     * @param dc Density of comments
+     * @param wmc Weighted methods per class
+     * @param bc Degree of comments
+     * @throws IOException If the metrics can't be written
+     */
+    void writeClass(String path, String name, String pkgPath,
+                    int loc, int cloc, float dc, int wmc, float bc) throws IOException;
+
+    /**
+     * A package was measured.
+     *
+     * @param path The path of the package
+     * @param name The name of the package
+     * @param loc Lines of code
+     * @param cloc Lines of comment
+     * @param dc Density of comments
+     * @param wcp Weighted classes per package
+     * @param bc Degree of comments
+     * @throws IOException If the metrics can't be written
+     */
+    void writePackage(String path, String name,
+                      int loc, int cloc, float dc, int wcp, float bc) throws IOException;
+}
@@ -0,0 +1,159 @@
+package counters;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * The packages of a project, organized as a tree.
+ * </br>
+ * The tree is built during a depth-first visit of the project:
+ * a package is entered, receives the metrics of its own classes,
+ * then is exited once all its sub-packages are exited. When a
+ * package is exited, its recursive metrics (wcp, number of classes)
+ * are computed from its sub-packages.
+ * <p/>
+ * Each class and each package is only counted once, so the
+ * metrics of every package are computed in O(classes + packages).
+ */
+public class PackageTree
+{
+    private final Node root = new Node(null, "");
+    private Node current = null;            //The package currently visited (null before the visit)
+
+    /**
+     * Enter a sub-package of the current package.
+     * The first package entered is the root.
+     *
+     * @param name The name of the sub-package (its folder)
+     * @return The entered package
+     */
+    public Node enter(String name)
+    {
+        current = current == null ? root : current.getOrCreateChild(name);
+        return current;
+    }
+
+    /**
+     * Add a class to the current package.
+     *
+     * @param loc Non-empty line of the class
+     * @param cloc Line with comment of the class
+     * @param wmc Weighted-method complexity of the class
+     */
+    public void addClass(int loc, int cloc, int wmc)
+    {
+        current.loc += loc;
+        current.cloc += cloc;
+        current.wmc += wmc;
+        current.classes++;
+    }
+
+    /**
+     * Exit the current package and return to its parent. </br>
+     * The recursive metrics of the package are computed.
+     *
+     * @return The exited package
+     */
+    public Node exit()
+    {
+        Node node = current;
+        node.close();
+
+        current = node.parent;
+        return node;
+    }
+
+    public Node getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * A package and its metrics.
+     */
+    public static class Node
+    {
+        private final Node parent;
+        private final String name;
+        private final LinkedHashMap<String, Node> children = new LinkedHashMap<>();
+
+        //Metrics of the classes of the package (not recursive)
+        private int loc = 0;
+        private int cloc = 0;
+        private int wmc = 0;
+        private int classes = 0;
+
+        //Recursive metrics, computed when the package is exited
+        private int wcp = 0;
+        private int totalClasses = 0;
+
+        private Node(Node parent, String name)
+        {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        private Node getOrCreateChild(String name)
+        {
+            return children.computeIfAbsent(name, childName -> new Node(this, childName));
+        }
+
+        /**
+         * Compute the recursive metrics from the
+         * sub-packages (already closed).
+         */
+        private void close()
+        {
+            wcp = wmc;
+            totalClasses = classes;
+            for(Node child : children.values())
+            {
+                wcp += child.wcp;
+                totalClasses += child.totalClasses;
+            }
+        }
+
+        public Node getParent()
+        {
+            return parent;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public Collection<Node> getChildren()
+        {
+            return children.values();
+        }
+
+        public int getLOC()
+        {
+            return loc;
+        }
+
+        public int getCLOC()
+        {
+            return cloc;
+        }
+
+        public int getWMC()
+        {
+            return wmc;
+        }
+
+        public int getWCP()
+        {
+            return wcp;
+        }
+
+        /**
+         * @return True if the package or one of its sub-packages has a class
+         */
+        public boolean hasClasses()
+        {
+            return totalClasses > 0;
+        }
+    }
+}
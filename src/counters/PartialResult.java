@@ -0,0 +1,220 @@
+package counters;
+
+import io.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metrics of the classes of one shard of a project.
+ * </br>
+ * A large project can be split into shards, measured by separate
+ * processes (see {@link CounterController#setShard(int, int)}).
+ * The class of a file only depends on its path relative to the
+ * project (see {@link #shardOf(String, int)}), so every process
+ * agrees on the shards without talking to the others.
+ * <p/>
+ * Only the raw metrics of the classes are kept (loc, cloc, wmc):
+ * the densities and the packages are computed when the shards
+ * are merged (see {@link CounterController#merge(int)}), so the
+ * packages split across shards have the same metrics as with
+ * a single process.
+ * <p/>
+ * The files of the shards are deleted once merged.
+ * <p/>
+ * The file is binary: a header (magic, {@link ClassCounter#VERSION},
+ * shard, shards, classes) then, for each class, its path relative
+ * to the project (with '/'), loc, cloc and wmc.
+ */
+public class PartialResult implements MetricsSink
+{
+    private static final int MAGIC = 0x4D505254;           //Identify a partial result file
+
+    private final int shard;
+    private final int shards;
+    private final FileSystem fileSystem;                    //File system of the paths written (project or archive)
+
+    //Metrics of each class (path relative to the project, with '/' -> {loc, cloc, wmc})
+    private final LinkedHashMap<String, int[]> classes = new LinkedHashMap<>();
+
+    /**
+     * @param shard The index of the shard (from 0)
+     * @param shards The number of shards
+     */
+    public PartialResult(int shard, int shards)
+    {
+        this(shard, shards, FileSystems.getDefault());
+    }
+
+    /**
+     * @param shard The index of the shard (from 0)
+     * @param shards The number of shards
+     * @param fileSystem The file system of the project (the paths of the classes are in its form)
+     */
+    public PartialResult(int shard, int shards, FileSystem fileSystem)
+    {
+        if(shards < 1 || shard < 0 || shard >= shards)
+        {
+            throw new IllegalArgumentException("Invalid shard " + shard + "/" + shards);
+        }
+
+        this.shard = shard;
+        this.shards = shards;
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * Return the shard of a class.
+     *
+     * @param path The path of the class, relative to the project, with '/'
+     * @param shards The number of shards
+     * @return The index of the shard (from 0)
+     */
+    public static int shardOf(String path, int shards)
+    {
+        return Math.floorMod(path.hashCode(), shards);      //String.hashCode is the same in every JVM
+    }
+
+    /**
+     * Return the path of a class in the form used by the shards:
+     * relative to the project, with '/'. </br>
+     * Only the separator of the file system is replaced, so a
+     * name with a backslash on Linux keeps it.
+     *
+     * @param path The path of the class, relative to the project
+     * @return The path with '/'
+     */
+    public static String relativePath(Path path)
+    {
+        return path.toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Return the file of a partial result.
+     *
+     * @param outputPath The output folder
+     * @param shard The index of the shard (from 0)
+     * @param shards The number of shards
+     * @return The file (shard-i-of-n.bin)
+     */
+    public static Path file(Path outputPath, int shard, int shards)
+    {
+        return outputPath.resolve("shard-" + shard + "-of-" + shards + ".bin");
+    }
+
+    @Override
+    public void writeClass(String path, String name, String pkgPath,
+                           int loc, int cloc, float dc, int wmc, float bc)
+    {
+        classes.put(relativePath(fileSystem.getPath(path)), new int[] {loc, cloc, wmc});
+    }
+
+    @Override
+    public void writePackage(String path, String name,
+                             int loc, int cloc, float dc, int wcp, float bc)
+    {
+        //Computed by the merge
+    }
+
+    /**
+     * Write the partial result. The file is replaced atomically.
+     *
+     * @param file The file
+     * @throws IOException If I/O errors occur
+     */
+    public void save(Path file) throws IOException
+    {
+        Path temp = AtomicFile.createTemp(file);
+
+        try
+        {
+            try(DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(ClassCounter.VERSION);
+                output.writeInt(shard);
+                output.writeInt(shards);
+                output.writeInt(classes.size());
+
+                for(Map.Entry<String, int[]> entry : classes.entrySet())
+                {
+                    output.writeUTF(entry.getKey());
+                    for(int metric : entry.getValue())
+                    {
+                        output.writeInt(metric);
+                    }
+                }
+            }
+
+            AtomicFile.commit(temp, file);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a partial result.
+     *
+     * @param file The file
+     * @return The partial result
+     * @throws IOException If the file can't be read, or is not a partial
+     *                     result of this version
+     */
+    public static PartialResult load(Path file) throws IOException
+    {
+        try(DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if(input.readInt() != MAGIC)
+            {
+                throw new IOException(file + " is not a partial result");
+            }
+            else if(input.readInt() != ClassCounter.VERSION)
+            {
+                throw new IOException(file + " was written by another version");
+            }
+
+            PartialResult result = new PartialResult(input.readInt(), input.readInt());
+            int size = input.readInt();
+            for(int i = 0; i < size; i++)
+            {
+                String path = input.readUTF();
+                result.classes.put(path, new int[] {input.readInt(), input.readInt(), input.readInt()});
+            }
+
+            return result;
+        }
+    }
+
+    public int getShard()
+    {
+        return shard;
+    }
+
+    public int getShards()
+    {
+        return shards;
+    }
+
+    /**
+     * @return The metrics of each class (path relative to the
+     *         project, with '/' -> {loc, cloc, wmc})
+     */
+    public Map<String, int[]> getClasses()
+    {
+        return Collections.unmodifiableMap(classes);
+    }
+}
@@ -0,0 +1,486 @@
+package counters;
+
+import io.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Select the folders and the files visited in a project.
+ * </br>
+ * The folders excluded are skipped with their whole sub-tree
+ * (see {@link Walk#enter(Path)}), so the walk never goes into them.
+ * The version control folders (.git, .svn, .hg) are always skipped.
+ * <p/>
+ * The globs are compiled once, and match the paths relative to
+ * the root of the project, with '/':
+ * <ul>
+ *     <li>* matches any characters but '/', ? a single one,</li>
+ *     <li>** matches any characters, and "**&#47;" any number of folders,</li>
+ *     <li>[abc] a character of the set, {a,b} one of the alternatives,</li>
+ *     <li>a glob without '/' matches the name of a file or folder, at any depth,</li>
+ *     <li>a glob ending with '/' only matches folders.</li>
+ * </ul>
+ * A file is visited if it matches one of the includes (or if there
+ * are none), and no exclude. A folder is skipped if it matches
+ * an exclude.
+ * <p/>
+ * With the .gitignore files, the files and folders ignored by git
+ * are excluded too. The rules of a .gitignore apply to its folder;
+ * the last rule that matches wins (a rule starting with ! includes
+ * the path again), and the rules of a sub-folder come after the
+ * rules of its parents.
+ */
+public class PathFilter
+{
+    private static final List<String> VCS_FOLDERS = List.of(".git", ".svn", ".hg");
+
+    private final List<Rule> includes = new ArrayList<>();
+    private final List<Rule> excludes = new ArrayList<>();
+    private boolean isGitIgnore = false;                //Honor the .gitignore files
+
+    /**
+     * Add a glob of the files to visit.
+     *
+     * @param glob The glob
+     */
+    public void addInclude(String glob)
+    {
+        includes.add(Rule.parse(glob, ""));
+    }
+
+    /**
+     * Add a glob of the files and folders to skip.
+     *
+     * @param glob The glob
+     */
+    public void addExclude(String glob)
+    {
+        excludes.add(Rule.parse(glob, ""));
+    }
+
+    public boolean isGitIgnore()
+    {
+        return isGitIgnore;
+    }
+
+    /**
+     * Set if the files and folders ignored by the .gitignore
+     * files are skipped.
+     *
+     * @param isGitIgnore True to honor the .gitignore files
+     */
+    public void setGitIgnore(boolean isGitIgnore)
+    {
+        this.isGitIgnore = isGitIgnore;
+    }
+
+    /**
+     * Start a walk of a project. </br>
+     * A walk follows the folders entered and exited, so
+     * each walk needs its own.
+     *
+     * @param root Root of the project
+     * @return The walk
+     */
+    public Walk walk(Path root)
+    {
+        return new Walk(root);
+    }
+
+    /**
+     * The state of the filter during a depth-first walk: the
+     * rules of the .gitignore of each folder entered.
+     */
+    public class Walk
+    {
+        private final Path root;
+        private final Deque<List<Rule>> ignored = new ArrayDeque<>();   //Rules of each entered folder
+
+        private Walk(Path root)
+        {
+            this.root = root;
+        }
+
+        /**
+         * Enter a folder, if it is not excluded. </br>
+         * A folder entered must be exited with {@link #exit()},
+         * after its sub-tree.
+         *
+         * @param dir The folder
+         * @return False if the folder (and its sub-tree) is skipped
+         */
+        public boolean enter(Path dir)
+        {
+            if(isSkipped(dir))
+            {
+                return false;
+            }
+
+            ignored.push(isGitIgnore ? readGitIgnore(dir, relativePath(dir)) : Collections.emptyList());
+            return true;
+        }
+
+        /**
+         * Enter a folder, like {@link #enter(Path)}, with the content
+         * of its .gitignore instead of the one on the disk (for example
+         * the .gitignore of a commit, see {@link GitHistory}).
+         *
+         * @param dir The folder
+         * @param gitIgnore The content of the .gitignore of the folder, or null if it has none
+         * @return False if the folder (and its sub-tree) is skipped
+         */
+        public boolean enter(Path dir, String gitIgnore)
+        {
+            if(isSkipped(dir))
+            {
+                return false;
+            }
+
+            List<Rule> rules = Collections.emptyList();
+            if(isGitIgnore && gitIgnore != null)
+            {
+                try
+                {
+                    rules = parseGitIgnore(gitIgnore.lines().collect(Collectors.toList()), relativePath(dir));
+                }
+                catch(RuntimeException e)
+                {
+                    Log.error("Ignoring the .gitignore of " + dir + ": " + e.getMessage());
+                }
+            }
+
+            ignored.push(rules);
+            return true;
+        }
+
+        /**
+         * Exit the last folder entered.
+         */
+        public void exit()
+        {
+            ignored.pop();
+        }
+
+        /**
+         * Check if a file of the current folder is visited.
+         *
+         * @param file The file
+         * @return True if the file is included and not excluded
+         */
+        public boolean accept(Path file)
+        {
+            String path = relativePath(file);
+            String name = file.getFileName().toString();
+            if(isExcluded(path, name, false))
+            {
+                return false;
+            }
+            else if(includes.isEmpty())
+            {
+                return true;
+            }
+
+            for(Rule include : includes)
+            {
+                if(include.matches(path, name, false))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean isSkipped(Path dir)
+        {
+            String path = relativePath(dir);
+            if(path.isEmpty())
+            {
+                return false;                           //The root is always entered
+            }
+
+            String name = dir.getFileName().toString();
+            return VCS_FOLDERS.contains(name) || isExcluded(path, name, true);
+        }
+
+        private boolean isExcluded(String path, String name, boolean isDirectory)
+        {
+            for(Rule exclude : excludes)
+            {
+                if(exclude.matches(path, name, isDirectory))
+                {
+                    return true;
+                }
+            }
+
+            //Last matching rule of the deepest .gitignore wins
+            boolean isIgnored = false;
+            for(Iterator<List<Rule>> rules = ignored.descendingIterator(); rules.hasNext();)
+            {
+                for(Rule rule : rules.next())
+                {
+                    if(rule.matches(path, name, isDirectory))
+                    {
+                        isIgnored = !rule.isNegated;
+                    }
+                }
+            }
+
+            return isIgnored;
+        }
+
+        private String relativePath(Path path)
+        {
+            return root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+        }
+    }
+
+    /**
+     * Read the rules of the .gitignore of a folder.
+     *
+     * @param dir The folder
+     * @param path The folder, relative to the root
+     * @return The rules (empty without .gitignore)
+     */
+    private static List<Rule> readGitIgnore(Path dir, String path)
+    {
+        Path file = dir.resolve(".gitignore");
+        if(!Files.isRegularFile(file))
+        {
+            return Collections.emptyList();
+        }
+
+        try
+        {
+            return parseGitIgnore(Files.readAllLines(file, StandardCharsets.UTF_8), path);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            Log.error("Ignoring " + file + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Parse the lines of a .gitignore.
+     *
+     * @param lines The lines of the .gitignore
+     * @param path The folder of the .gitignore, relative to the root
+     * @return The rules
+     */
+    private static List<Rule> parseGitIgnore(List<String> lines, String path)
+    {
+        List<Rule> rules = new ArrayList<>();
+        for(String line : lines)
+        {
+            line = stripTrailingSpaces(line);
+            if(line.isEmpty() || line.startsWith("#")) continue;
+
+            rules.add(Rule.parse(line, path));
+        }
+
+        return rules;
+    }
+
+    /**
+     * Remove the spaces at the end of a line, unless escaped.
+     */
+    private static String stripTrailingSpaces(String line)
+    {
+        int end = line.length();
+        while(end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\'))
+        {
+            end--;
+        }
+
+        return line.substring(0, end);
+    }
+
+    /**
+     * A glob (or a line of a .gitignore), compiled.
+     */
+    private static class Rule
+    {
+        private final Pattern pattern;
+        private final String base;              //Folder of the rule, relative to the root ("" for the root)
+        private final boolean isNegated;        //!glob
+        private final boolean isDirectory;      //glob/ (only matches folders)
+        private final boolean isAnchored;       //Matches the path, not the name
+
+        private Rule(Pattern pattern, String base, boolean isNegated, boolean isDirectory, boolean isAnchored)
+        {
+            this.pattern = pattern;
+            this.base = base;
+            this.isNegated = isNegated;
+            this.isDirectory = isDirectory;
+            this.isAnchored = isAnchored;
+        }
+
+        /**
+         * Compile a glob.
+         *
+         * @param glob The glob
+         * @param base The folder of the glob, relative to the root
+         * @return The rule
+         */
+        private static Rule parse(String glob, String base)
+        {
+            boolean isNegated = glob.startsWith("!");
+            if(isNegated || glob.startsWith("\\!") || glob.startsWith("\\#"))
+            {
+                glob = glob.substring(1);
+            }
+
+            boolean isDirectory = glob.endsWith("/");
+            if(isDirectory)
+            {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+
+            boolean isAnchored = glob.contains("/");
+            if(glob.startsWith("/"))
+            {
+                glob = glob.substring(1);
+            }
+            if(glob.isEmpty())
+            {
+                throw new IllegalArgumentException("Empty glob");
+            }
+
+            return new Rule(Pattern.compile(toRegex(glob)), base, isNegated, isDirectory, isAnchored);
+        }
+
+        /**
+         * Check if the rule matches a file or a folder.
+         *
+         * @param path The path, relative to the root, with '/'
+         * @param name The name of the file or folder
+         * @param isDirectory True for a folder
+         * @return True if the rule matches
+         */
+        private boolean matches(String path, String name, boolean isDirectory)
+        {
+            if(this.isDirectory && !isDirectory)
+            {
+                return false;
+            }
+            else if(!isAnchored)
+            {
+                return pattern.matcher(name).matches();
+            }
+            else if(base.isEmpty())
+            {
+                return pattern.matcher(path).matches();
+            }
+            else if(path.startsWith(base) && path.length() > base.length() && path.charAt(base.length()) == '/')
+            {
+                return pattern.matcher(path.substring(base.length() + 1)).matches();
+            }
+
+            return false;
+        }
+
+        /**
+         * Convert a glob into a regex.
+         */
+        private static String toRegex(String glob)
+        {
+            StringBuilder regex = new StringBuilder();
+            int alternatives = 0;                       //Depth of {a,b}
+            for(int i = 0; i < glob.length(); i++)
+            {
+                char c = glob.charAt(i);
+                switch(c)
+                {
+                    case '*':
+                        if(i + 1 < glob.length() && glob.charAt(i + 1) == '*')
+                        {
+                            i++;
+                            if(i + 1 < glob.length() && glob.charAt(i + 1) == '/')
+                            {
+                                i++;
+                                regex.append("(.*/)?");         //**/ -> any number of folders
+                            }
+                            else
+                            {
+                                regex.append(".*");
+                            }
+                        }
+                        else
+                        {
+                            regex.append("[^/]*");
+                        }
+                        break;
+                    case '?':
+                        regex.append("[^/]");
+                        break;
+                    case '[':
+                        int end = glob.indexOf(']', i + 2);
+                        if(end == -1)
+                        {
+                            regex.append("\\[");
+                        }
+                        else
+                        {
+                            String set = glob.substring(i + 1, end);
+                            if(set.startsWith("!"))
+                            {
+                                set = "^" + set.substring(1);
+                            }
+                            regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                            i = end;
+                        }
+                        break;
+                    case '{':
+                        alternatives++;
+                        regex.append("(?:");
+                        break;
+                    case '}':
+                        if(alternatives > 0)
+                        {
+                            alternatives--;
+                            regex.append(')');
+                        }
+                        else
+                        {
+                            regex.append("\\}");
+                        }
+                        break;
+                    case ',':
+                        regex.append(alternatives > 0 ? "|" : ",");
+                        break;
+                    case '\\':
+                        if(i + 1 < glob.length())
+                        {
+                            i++;
+                            regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                        }
+                        break;
+                    default:
+                        if("().+^$|".indexOf(c) != -1)
+                        {
+                            regex.append('\\');
+                        }
+                        regex.append(c);
+                }
+            }
+
+            if(alternatives > 0)
+            {
+                throw new IllegalArgumentException("Unclosed { in the glob " + glob);
+            }
+            return regex.toString();
+        }
+    }
+}
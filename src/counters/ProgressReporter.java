@@ -0,0 +1,201 @@
+package counters;
+
+import io.Log;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Report the progress of a run: a line with the number of
+ * classes done, the classes per second and the estimated
+ * remaining time, written periodically (see {@link Log#info(String)}).
+ * </br>
+ * The classes are counted with {@link #classDone()}, which never
+ * blocks. The lines are written by a background thread. The total
+ * number of classes can be given, or counted in the background
+ * (see {@link #countClasses(Path, PathFilter)}); without it there
+ * is no ETA.
+ */
+public class ProgressReporter
+{
+    public static final long DEFAULT_PERIOD = 1000;         //Time between two lines (ms)
+
+    private final long period;
+    private final LongAdder classes = new LongAdder();
+    private volatile long totalClasses = -1;                //Unknown if -1
+
+    private ScheduledExecutorService scheduler;
+    private long startNanos;
+
+    public ProgressReporter()
+    {
+        this(DEFAULT_PERIOD);
+    }
+
+    /**
+     * @param period Time between two lines, in milliseconds
+     */
+    public ProgressReporter(long period)
+    {
+        this.period = period;
+    }
+
+    /**
+     * Start writing the progress lines.
+     */
+    public void start()
+    {
+        startNanos = System.nanoTime();
+        if(!Log.isInfo()) return;
+
+        //Two threads: the reports, and the count of the classes
+        scheduler = Executors.newScheduledThreadPool(2, task -> {
+            Thread thread = new Thread(task, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Count the classes of the project in the background,
+     * to estimate the remaining time.
+     *
+     * @param root Root folder of the project
+     * @param pathFilter The folders and files visited, or null for all
+     */
+    public void countClasses(Path root, PathFilter pathFilter)
+    {
+        ScheduledExecutorService executor = scheduler;
+        if(executor == null) return;
+
+        executor.execute(() -> {
+            long[] count = {0};
+            PathFilter.Walk walk = pathFilter == null ? null : pathFilter.walk(root);
+            try
+            {
+                Files.walkFileTree(root, new SimpleFileVisitor<>()
+                {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    {
+                        return walk == null || walk.enter(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    {
+                        if(file.toString().endsWith(".java") && (walk == null || walk.accept(file)))
+                        {
+                            count[0]++;
+                        }
+                        return executor.isShutdown() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc)
+                    {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+                    {
+                        if(walk != null)
+                        {
+                            walk.exit();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                totalClasses = count[0];
+            }
+            catch(IOException e)
+            {
+                //No ETA
+            }
+        });
+    }
+
+    /**
+     * A class is done. Never blocks.
+     */
+    public void classDone()
+    {
+        classes.increment();
+    }
+
+    public void setTotalClasses(long totalClasses)
+    {
+        this.totalClasses = totalClasses;
+    }
+
+    /**
+     * Stop writing the progress lines, and write the summary.
+     */
+    public void stop()
+    {
+        if(scheduler == null) return;
+
+        scheduler.shutdownNow();
+        scheduler = null;
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long done = classes.sum();
+        Log.info(String.format(Locale.ROOT, "Done: %d classes in %.1f s (%.0f classes/s)",
+                done, seconds, seconds == 0 ? 0 : done / seconds));
+    }
+
+    /**
+     * Write the progress line.
+     */
+    private void report()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long done = classes.sum();
+        double rate = seconds == 0 ? 0 : done / seconds;
+
+        StringBuilder line = new StringBuilder("Progress: ").append(done);
+        long total = totalClasses;
+        if(total > 0)
+        {
+            line.append('/').append(total)
+                    .append(String.format(Locale.ROOT, " classes (%.0f%%)", Math.min(100.0, 100.0 * done / total)));
+        }
+        else
+        {
+            line.append(" classes");
+        }
+        line.append(String.format(Locale.ROOT, ", %.0f classes/s", rate));
+        if(total > 0 && rate > 0)
+        {
+            line.append(", ETA ").append(formatDuration(Math.max(0, total - done) / rate));
+        }
+
+        Log.info(line.toString());
+    }
+
+    private static String formatDuration(double seconds)
+    {
+        long rounded = Math.round(seconds);
+        if(rounded < 60)
+        {
+            return rounded + "s";
+        }
+        else if(rounded < 3600)
+        {
+            return (rounded / 60) + "m" + String.format(Locale.ROOT, "%02d", rounded % 60) + "s";
+        }
+
+        return (rounded / 3600) + "h" + String.format(Locale.ROOT, "%02d", (rounded % 3600) / 60) + "m";
+    }
+}
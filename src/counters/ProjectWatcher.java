@@ -0,0 +1,142 @@
+package counters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch the folders of a project and report the files
+ * that are created, modified or deleted.
+ * </br>
+ * The changes are grouped: after a first change, the
+ * following changes are collected during a short delay
+ * (an editor often writes a file in several steps).
+ */
+public class ProjectWatcher implements Closeable
+{
+    public static final long DEFAULT_DELAY = 50;            //Delay to group the changes (ms)
+
+    private final Path root;
+    private final long delay;
+    private final WatchService watchService;
+    private final HashMap<WatchKey, Path> folders = new HashMap<>();   //Registered folders
+
+    public ProjectWatcher(Path root) throws IOException
+    {
+        this(root, DEFAULT_DELAY);
+    }
+
+    /**
+     * @param root Root of the project
+     * @param delay Delay to group the changes, in milliseconds
+     * @throws IOException If the folders can't be watched
+     */
+    public ProjectWatcher(Path root, long delay) throws IOException
+    {
+        this.root = root;
+        this.delay = delay;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        register(root);
+    }
+
+    /**
+     * Wait for changes in the project.
+     *
+     * @param changedFiles Receive the (absolute) paths of the changed files and folders
+     * @return False if some changes were lost: every file may have changed
+     * @throws InterruptedException If interrupted while waiting
+     * @throws IOException If a new folder can't be watched
+     */
+    public boolean awaitChanges(Set<Path> changedFiles) throws InterruptedException, IOException
+    {
+        boolean isComplete = true;
+
+        WatchKey key = watchService.take();
+        while(key != null)
+        {
+            Path folder = folders.get(key);
+            for(WatchEvent<?> event : key.pollEvents())
+            {
+                if(event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null)
+                {
+                    isComplete = false;
+                    continue;
+                }
+
+                Path file = folder.resolve((Path) event.context());
+                changedFiles.add(file);
+
+                //Watch the new folders too
+                if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file))
+                {
+                    register(file);
+                    isComplete = false;         //Its files may be created before it is watched
+                }
+            }
+
+            //The folder is no longer valid (deleted)
+            if(!key.reset())
+            {
+                folders.remove(key);
+            }
+
+            key = watchService.poll(delay, TimeUnit.MILLISECONDS);
+        }
+
+        return isComplete;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        watchService.close();
+    }
+
+    public Path getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Watch a folder and all its sub-folders.
+     *
+     * @param folder The folder
+     * @throws IOException If I/O errors occur
+     */
+    private void register(Path folder) throws IOException
+    {
+        Files.walkFileTree(folder, new SimpleFileVisitor<>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+            {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                folders.put(key, dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc)
+            {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,444 @@
+package counters;
+
+import io.RowSink;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of a run: time of each phase, latency
+ * histogram of the classes, allocated bytes and the
+ * slowest classes.
+ * </br>
+ * The phases are:
+ * <ul>
+ *     <li>walk: visiting the folders (without reading the classes and writing the rows)</li>
+ *     <li>load: loading the files of the classes</li>
+ *     <li>count: counting the metrics of the classes</li>
+ *     <li>write: writing the rows and the output files</li>
+ * </ul>
+ * With more than one thread, load and count are summed over the threads.
+ * </br>
+ * The classes counted in degraded mode (see {@link ClassCounter#isDegraded()})
+ * are listed in the report. The classes that took the metrics of a class
+ * with the same content (see {@link ClassCounter#isDeduplicated()}) are
+ * counted apart from the measured and the cached classes.
+ * <p/>
+ * The statistics can be written into a JSON report, and the run
+ * is recorded as a JFR event ({@link CountRunEvent}).
+ * <p/>
+ * This class is thread-safe.
+ */
+public class RunStatistics
+{
+    public enum Phase
+    {
+        WALK,
+        LOAD,
+        COUNT,
+        WRITE
+    }
+
+    public static final int DEFAULT_TOP_FILES = 10;
+
+    private static final int BUCKETS = 32;                  //Bucket i: latency < 2^i us
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int topFiles;                             //Number of slowest classes kept
+
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final LongAdder measuredClasses = new LongAdder();
+    private final LongAdder cachedClasses = new LongAdder();
+    private final LongAdder deduplicatedClasses = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder unknownAllocations = new LongAdder();    //Classes without allocation measure
+
+    //The slowest classes, the fastest first
+    private final PriorityQueue<ClassStatistics> slowestClasses
+            = new PriorityQueue<>(Comparator.comparingLong(ClassStatistics::getNanos));
+    private final List<String> degradedClasses = new ArrayList<>();
+
+    private final CountRunEvent event = new CountRunEvent();
+    private long startNanos;
+    private long wallNanos;
+
+    public RunStatistics()
+    {
+        this(DEFAULT_TOP_FILES);
+    }
+
+    /**
+     * @param topFiles Number of slowest classes in the report
+     */
+    public RunStatistics(int topFiles)
+    {
+        this.topFiles = topFiles;
+        for(int i = 0; i < phaseNanos.length; i++)
+        {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Start the run.
+     */
+    public void start()
+    {
+        startNanos = System.nanoTime();
+        event.begin();
+    }
+
+    /**
+     * End the run, and record its JFR event.
+     *
+     * @param project The measured project
+     */
+    public void stop(String project)
+    {
+        wallNanos = System.nanoTime() - startNanos;
+
+        event.end();
+        if(event.shouldCommit())
+        {
+            event.project = project;
+            event.measuredClasses = measuredClasses.sum();
+            event.cachedClasses = cachedClasses.sum();
+            event.deduplicatedClasses = deduplicatedClasses.sum();
+            event.walkTime = getPhaseNanos(Phase.WALK);
+            event.loadTime = getPhaseNanos(Phase.LOAD);
+            event.countTime = getPhaseNanos(Phase.COUNT);
+            event.writeTime = getPhaseNanos(Phase.WRITE);
+            event.allocated = allocatedBytes.sum();
+            event.commit();
+        }
+    }
+
+    public void addPhase(Phase phase, long nanos)
+    {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    /**
+     * Record a class.
+     *
+     * @param file The file of the class
+     * @param counter The counter of the class
+     * @param allocated Bytes allocated to read the class (-1 if unknown)
+     */
+    public void addClass(Path file, ClassCounter counter, long allocated)
+    {
+        //Also a class with the same content as a degraded class
+        if(counter.isDegraded())
+        {
+            synchronized(degradedClasses)
+            {
+                degradedClasses.add(file.toString());
+            }
+        }
+
+        if(counter.isDeduplicated())
+        {
+            deduplicatedClasses.increment();
+            return;
+        }
+        if(!counter.isRead())
+        {
+            cachedClasses.increment();
+            return;
+        }
+
+        measuredClasses.increment();
+        addPhase(Phase.LOAD, counter.getLoadNanos());
+        addPhase(Phase.COUNT, counter.getCountNanos());
+        if(allocated >= 0)
+        {
+            allocatedBytes.add(allocated);
+        }
+        else
+        {
+            unknownAllocations.increment();
+        }
+
+        long nanos = counter.getLoadNanos() + counter.getCountNanos();
+        histogram.incrementAndGet(bucket(nanos));
+
+        synchronized(slowestClasses)
+        {
+            if(slowestClasses.size() < topFiles || slowestClasses.peek().getNanos() < nanos)
+            {
+                slowestClasses.add(new ClassStatistics(file.toString(), counter, allocated));
+                if(slowestClasses.size() > topFiles)
+                {
+                    slowestClasses.poll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wrap a table to record the time spent writing its rows.
+     *
+     * @param table The table
+     * @return The table that records the write phase
+     */
+    public RowSink timed(RowSink table)
+    {
+        return row -> {
+            long start = System.nanoTime();
+            table.writeRow(row);
+            addPhase(Phase.WRITE, System.nanoTime() - start);
+        };
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far,
+     *         or -1 if it can't be measured
+     */
+    public static long threadAllocatedBytes()
+    {
+        if(THREADS instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    public long getPhaseNanos(Phase phase)
+    {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    public long getMeasuredClasses()
+    {
+        return measuredClasses.sum();
+    }
+
+    public long getCachedClasses()
+    {
+        return cachedClasses.sum();
+    }
+
+    /**
+     * @return Number of classes that took the metrics of
+     *         a class with the same content
+     */
+    public long getDeduplicatedClasses()
+    {
+        return deduplicatedClasses.sum();
+    }
+
+    public long getWallNanos()
+    {
+        return wallNanos;
+    }
+
+    /**
+     * @return The classes counted in degraded mode
+     */
+    public List<String> getDegradedClasses()
+    {
+        synchronized(degradedClasses)
+        {
+            return new ArrayList<>(degradedClasses);
+        }
+    }
+
+    /**
+     * @return The slowest classes, the slowest first
+     */
+    public List<ClassStatistics> getSlowestClasses()
+    {
+        List<ClassStatistics> classes;
+        synchronized(slowestClasses)
+        {
+            classes = new ArrayList<>(slowestClasses);
+        }
+
+        classes.sort(Comparator.comparingLong(ClassStatistics::getNanos).reversed());
+        return classes;
+    }
+
+    /**
+     * Write the statistics into a JSON report.
+     *
+     * @param reportPath The file of the report
+     * @throws IOException If I/O errors occur
+     */
+    public void writeReport(Path reportPath) throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"wallNanos\": ").append(wallNanos).append(",\n");
+        json.append("  \"classes\": {\"measured\": ").append(measuredClasses.sum())
+                .append(", \"cached\": ").append(cachedClasses.sum())
+                .append(", \"deduplicated\": ").append(deduplicatedClasses.sum())
+                .append(", \"degraded\": ").append(getDegradedClasses().size()).append("},\n");
+
+        json.append("  \"phases\": {");
+        for(Phase phase : Phase.values())
+        {
+            json.append(phase.ordinal() == 0 ? "" : ", ")
+                    .append('"').append(phase.name().toLowerCase(Locale.ROOT)).append("Nanos\": ")
+                    .append(getPhaseNanos(phase));
+        }
+        json.append("},\n");
+
+        long measured = measuredClasses.sum() - unknownAllocations.sum();
+        json.append("  \"allocatedBytes\": {\"total\": ").append(allocatedBytes.sum())
+                .append(", \"perClass\": ").append(measured == 0 ? 0 : allocatedBytes.sum() / measured)
+                .append(", \"unknownClasses\": ").append(unknownAllocations.sum()).append("},\n");
+
+        //Only the buckets up to the last used one
+        int lastBucket = BUCKETS - 1;
+        while(lastBucket > 0 && histogram.get(lastBucket) == 0)
+        {
+            lastBucket--;
+        }
+        json.append("  \"latencyHistogram\": [");
+        for(int i = 0; i <= lastBucket; i++)
+        {
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"maxMicros\": ").append(1L << i)
+                    .append(", \"classes\": ").append(histogram.get(i)).append('}');
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"slowestClasses\": [");
+        List<ClassStatistics> classes = getSlowestClasses();
+        for(int i = 0; i < classes.size(); i++)
+        {
+            ClassStatistics stats = classes.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"path\": ").append(quote(stats.getPath()))
+                    .append(", \"nanos\": ").append(stats.getNanos())
+                    .append(", \"loadNanos\": ").append(stats.getLoadNanos())
+                    .append(", \"countNanos\": ").append(stats.getCountNanos())
+                    .append(", \"allocatedBytes\": ").append(stats.getAllocatedBytes())
+                    .append(", \"loc\": ").append(stats.getLOC())
+                    .append(", \"wmc\": ").append(stats.getWMC()).append('}');
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"degradedClasses\": [");
+        List<String> degraded = getDegradedClasses();
+        for(int i = 0; i < degraded.size(); i++)
+        {
+            json.append(i == 0 ? "\n" : ",\n").append("    ").append(quote(degraded.get(i)));
+        }
+        json.append("\n  ]\n");
+        json.append("}\n");
+
+        Files.writeString(reportPath, json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Index of the histogram bucket of a latency.
+     */
+    private static int bucket(long nanos)
+    {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);         //micros < 2^bucket
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Quote a JSON string.
+     */
+    private static String quote(String value)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for(int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\')
+            {
+                quoted.append('\\').append(c);
+            }
+            else if(c < 0x20)
+            {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                quoted.append(c);
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * The statistics of a measured class.
+     */
+    public static class ClassStatistics
+    {
+        private final String path;
+        private final long loadNanos;
+        private final long countNanos;
+        private final long allocatedBytes;
+        private final int loc;
+        private final int wmc;
+
+        private ClassStatistics(String path, ClassCounter counter, long allocatedBytes)
+        {
+            this.path = path;
+            this.loadNanos = counter.getLoadNanos();
+            this.countNanos = counter.getCountNanos();
+            this.allocatedBytes = allocatedBytes;
+            this.loc = counter.getLOC();
+            this.wmc = counter.getWMC();
+        }
+
+        public String getPath()
+        {
+            return path;
+        }
+
+        public long getNanos()
+        {
+            return loadNanos + countNanos;
+        }
+
+        public long getLoadNanos()
+        {
+            return loadNanos;
+        }
+
+        public long getCountNanos()
+        {
+            return countNanos;
+        }
+
+        /**
+         * @return Bytes allocated to read the class, or -1 if unknown
+         */
+        public long getAllocatedBytes()
+        {
+            return allocatedBytes;
+        }
+
+        public int getLOC()
+        {
+            return loc;
+        }
+
+        public int getWMC()
+        {
+            return wmc;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class is used to replace a file atomically.
+ * </br>
+ * The new content is written into a temporary file of the
+ * same folder (see {@link #createTemp(Path)}), which replaces
+ * the file on {@link #commit(Path, Path)}. The readers of the
+ * file see either the old content or the new one, never a
+ * partial one.
+ * <p/>
+ * The temporary file is created like any other file, so it
+ * gets the default permissions (umask), or the permissions of
+ * the file it replaces. {@link Files#createTempFile} would
+ * create it readable by its owner only.
+ */
+public final class AtomicFile
+{
+    private AtomicFile()
+    {
+    }
+
+    /**
+     * Create an empty temporary file next to a file.
+     *
+     * @param file The file to replace
+     * @return The temporary file
+     * @throws IOException If I/O errors occur
+     */
+    public static Path createTemp(Path file) throws IOException
+    {
+        Path path = file.toAbsolutePath();
+        while(true)
+        {
+            Path temp = path.resolveSibling(path.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try
+            {
+                Files.createFile(temp);
+            }
+            catch(FileAlreadyExistsException e)
+            {
+                continue;                               //Try another name
+            }
+
+            //Keep the permissions of the file replaced
+            try
+            {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+            }
+            catch(NoSuchFileException | UnsupportedOperationException e)
+            {
+                //New file, or not a posix file system -> default permissions
+            }
+            catch(IOException e)
+            {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+
+            return temp;
+        }
+    }
+
+    /**
+     * Replace a file by its temporary file.
+     *
+     * @param temp The temporary file, from {@link #createTemp(Path)}
+     * @param file The file to replace
+     * @throws IOException If I/O errors occur
+     */
+    public static void commit(Path temp, Path file) throws IOException
+    {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
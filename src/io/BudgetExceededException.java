@@ -0,0 +1,15 @@
+package io;
+
+/**
+ * Thrown when the time allowed to read a text is
+ * exceeded (see {@link Tokenizer#setDeadline(long)}).
+ */
+public class BudgetExceededException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    public BudgetExceededException(String message)
+    {
+        super(message);
+    }
+}
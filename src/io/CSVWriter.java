@@ -1,20 +1,37 @@
 package io;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * This class is used to write a matrice of string
  * into a csv file.
+ * </br>
+ * The csv can also be written one row at a time
+ * (see {@link #open()}): the rows are written in a temporary
+ * file as they come, which replaces the csv file on
+ * {@link #commit()}.
+ * <p/>
+ * Values with a separator, a quote or a newline are quoted.
  */
-public class CSVWriter
+public class CSVWriter implements RowSink, Closeable
 {
     public static final String SEPARATOR = ",";     //Default separator of the csv
+    public static final String QUOTE = "\"";        //Quote of the values with special characters
 
     private String filePath;
     private String[][] content;
 
+    //Used when writing row by row
+    private Path tempPath;                          //The temporary file
+    private Writer writer;                          //Writer of the temporary file
+    private boolean isFirstRow;
+
     public CSVWriter(String filePath)
     {
         this.filePath = filePath;
@@ -34,34 +51,106 @@ public class CSVWriter
      */
     public void write() throws IOException
     {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filePath)))       //Open the file
+        open();
+        try
         {
             //Write all lines
-            for(int i = 0; i < content.length; i++)
+            for(String[] line : content)
+            {
+                writeRow(line);
+            }
+
+            commit();
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+    /**
+     * Start writing the csv row by row.
+     *
+     * @throws IOException If I/O errors occur
+     */
+    public void open() throws IOException
+    {
+        tempPath = AtomicFile.createTemp(Paths.get(filePath));
+        writer = Files.newBufferedWriter(tempPath, Charset.defaultCharset());
+        isFirstRow = true;
+    }
+
+    /**
+     * Write a row of the csv. </br>
+     * The csv must be opened with {@link #open()}.
+     *
+     * @param row The columns of the row
+     * @throws IOException If I/O errors occur
+     */
+    @Override
+    public void writeRow(String... row) throws IOException
+    {
+        if(writer == null)
+        {
+            throw new IllegalStateException("The csv " + filePath + " is not opened");
+        }
+
+        //Last line doesn't end witn a newline
+        if(!isFirstRow)
+        {
+            writer.write("\n");
+        }
+        isFirstRow = false;
+
+        //Write all columns of a line
+        for(int j = 0; j < row.length; j++)
+        {
+            writer.write(quote(row[j]));
+
+            //Last column doesn't end in a comma
+            if(j != row.length-1)
             {
-                String[] line = content[i];
-
-                //Write all columns of a line
-                for(int j = 0; j < line.length; j++)
-                {
-                    writer.write(line[j]);
-
-                    //Last column doesn't end in a comma
-                    if(j != line.length-1)
-                    {
-                        writer.write(SEPARATOR);
-                    }
-                }
-
-                //Last line doesn't end witn a newline
-                if(i != content.length-1)
-                {
-                    writer.write("\n");
-                }
+                writer.write(SEPARATOR);
             }
         }
     }
 
+    /**
+     * Finish writing the csv: the rows written since
+     * {@link #open()} replace the csv file.
+     *
+     * @throws IOException If I/O errors occur
+     */
+    public void commit() throws IOException
+    {
+        writer.close();
+        writer = null;
+
+        AtomicFile.commit(tempPath, Paths.get(filePath));
+        tempPath = null;
+    }
+
+    /**
+     * Stop writing the csv. If it wasn't committed, the
+     * rows are discarded and the csv file is unchanged.
+     *
+     * @throws IOException If I/O errors occur
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(writer != null)
+        {
+            writer.close();
+            writer = null;
+        }
+        if(tempPath != null)
+        {
+            Files.deleteIfExists(tempPath);
+            tempPath = null;
+        }
+    }
+
     public String getFilePath()
     {
         return filePath;
@@ -76,4 +165,22 @@ public class CSVWriter
     {
         this.content = content;
     }
+
+    /**
+     * Quote a value if it contains a separator, a quote
+     * or a newline. The quotes inside the value are doubled.
+     *
+     * @param value The value
+     * @return The value, ready to be written in the csv
+     */
+    public static String quote(String value)
+    {
+        if(value.contains(SEPARATOR) || value.contains(QUOTE)
+                || value.indexOf('\n') != -1 || value.indexOf('\r') != -1)
+        {
+            return QUOTE + value.replace(QUOTE, QUOTE + QUOTE) + QUOTE;
+        }
+
+        return value;
+    }
 }
@@ -0,0 +1,12 @@
+package io;
+
+/**
+ * The type of a column of a columnar file
+ * (see {@link ColumnarWriter}).
+ */
+public enum ColumnType
+{
+    STRING,             //Dictionary id (int) of the value
+    INT,
+    FLOAT
+}
@@ -0,0 +1,242 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class is used to load a file written by
+ * {@link ColumnarWriter}.
+ * </br>
+ * Each column is loaded with one bulk read into a primitive
+ * array: nothing is parsed. The string columns contain ids
+ * in the dictionary of the file (see {@link #getDictionary()}).
+ * <p/>
+ * A gzip file is detected and decompressed.
+ */
+public class ColumnarReader
+{
+    private final String[] dictionary;
+    private final LinkedHashMap<String, Table> tables = new LinkedHashMap<>();
+
+    /**
+     * Load a columnar file.
+     *
+     * @param file The file
+     * @throws IOException If the file can't be read or is not a columnar file
+     */
+    public ColumnarReader(Path file) throws IOException
+    {
+        try(DataInputStream input = new DataInputStream(open(file)))
+        {
+            if(input.readInt() != ColumnarWriter.MAGIC)
+            {
+                throw new IOException(file + " is not a columnar file");
+            }
+            if(input.readInt() != ColumnarWriter.VERSION)
+            {
+                throw new IOException("Unsupported version of the columnar file " + file);
+            }
+
+            dictionary = new String[input.readInt()];
+            for(int i = 0; i < dictionary.length; i++)
+            {
+                dictionary[i] = input.readUTF();
+            }
+
+            int tableCount = input.readInt();
+            for(int i = 0; i < tableCount; i++)
+            {
+                Table table = new Table(input);
+                tables.put(table.getName(), table);
+            }
+        }
+    }
+
+    /**
+     * @return The strings of the file, indexed by id
+     */
+    public String[] getDictionary()
+    {
+        return dictionary;
+    }
+
+    /**
+     * @param name The name of the table
+     * @return The table, or null if there is no such table
+     */
+    public Table getTable(String name)
+    {
+        return tables.get(name);
+    }
+
+    /**
+     * Open the file, through a gzip stream if it is compressed.
+     */
+    private static InputStream open(Path file) throws IOException
+    {
+        InputStream input = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+
+        //Gzip magic number: 1F 8B
+        input.mark(2);
+        boolean isCompressed = input.read() == 0x1F && input.read() == 0x8B;
+        input.reset();
+
+        return isCompressed ? new BufferedInputStream(new GZIPInputStream(input, 64 * 1024), 64 * 1024) : input;
+    }
+
+    /**
+     * A table of the file.
+     */
+    public class Table
+    {
+        private final String name;
+        private final int rows;
+        private final String[] columnNames;
+        private final ColumnType[] types;
+        private final int[][] intColumns;           //Values of the STRING and INT columns
+        private final float[][] floatColumns;       //Values of the FLOAT columns
+
+        private Table(DataInputStream input) throws IOException
+        {
+            name = input.readUTF();
+            rows = input.readInt();
+
+            int columns = input.readInt();
+            columnNames = new String[columns];
+            types = new ColumnType[columns];
+            for(int column = 0; column < columns; column++)
+            {
+                columnNames[column] = input.readUTF();
+                int type = input.readUnsignedByte();
+                if(type >= ColumnType.values().length)
+                {
+                    throw new IOException("Unknown type of column " + type);
+                }
+                types[column] = ColumnType.values()[type];
+            }
+
+            //Each column in one block
+            intColumns = new int[columns][];
+            floatColumns = new float[columns][];
+            byte[] bytes = new byte[rows * Integer.BYTES];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            for(int column = 0; column < columns; column++)
+            {
+                input.readFully(bytes);
+                if(types[column] == ColumnType.FLOAT)
+                {
+                    floatColumns[column] = new float[rows];
+                    buffer.clear();
+                    buffer.asFloatBuffer().get(floatColumns[column]);
+                }
+                else
+                {
+                    intColumns[column] = new int[rows];
+                    buffer.clear();
+                    buffer.asIntBuffer().get(intColumns[column]);
+                }
+            }
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getRowCount()
+        {
+            return rows;
+        }
+
+        public String[] getColumnNames()
+        {
+            return columnNames.clone();
+        }
+
+        /**
+         * @param columnName The name of a column
+         * @return The index of the column, or -1 if there is no such column
+         */
+        public int getColumn(String columnName)
+        {
+            for(int column = 0; column < columnNames.length; column++)
+            {
+                if(columnNames[column].equals(columnName))
+                {
+                    return column;
+                }
+            }
+
+            return -1;
+        }
+
+        public ColumnType getType(int column)
+        {
+            return types[column];
+        }
+
+        public String getString(int column, int row)
+        {
+            checkType(column, ColumnType.STRING);
+            return dictionary[intColumns[column][row]];
+        }
+
+        public int getInt(int column, int row)
+        {
+            checkType(column, ColumnType.INT);
+            return intColumns[column][row];
+        }
+
+        public float getFloat(int column, int row)
+        {
+            checkType(column, ColumnType.FLOAT);
+            return floatColumns[column][row];
+        }
+
+        /**
+         * @param column A STRING column
+         * @return The dictionary ids of the column (not copied)
+         */
+        public int[] getStringIds(int column)
+        {
+            checkType(column, ColumnType.STRING);
+            return intColumns[column];
+        }
+
+        /**
+         * @param column An INT column
+         * @return The values of the column (not copied)
+         */
+        public int[] getInts(int column)
+        {
+            checkType(column, ColumnType.INT);
+            return intColumns[column];
+        }
+
+        /**
+         * @param column A FLOAT column
+         * @return The values of the column (not copied)
+         */
+        public float[] getFloats(int column)
+        {
+            checkType(column, ColumnType.FLOAT);
+            return floatColumns[column];
+        }
+
+        private void checkType(int column, ColumnType type)
+        {
+            if(types[column] != type)
+            {
+                throw new IllegalArgumentException("The column " + columnNames[column] + " of "
+                        + name + " is a " + types[column] + " column");
+            }
+        }
+    }
+}
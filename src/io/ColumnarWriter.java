@@ -0,0 +1,293 @@
+package io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class is used to write tables into a compact
+ * binary file, column by column.
+ * </br>
+ * The numbers are kept in primitive columns, the strings are
+ * replaced by their id in a dictionary shared by all the tables.
+ * The tables are built in memory, row by row, then the file is
+ * written by {@link #write()} (the file is replaced atomically).
+ * <p/>
+ * Format (big-endian, optionally in a gzip stream):
+ * <pre>
+ * int MAGIC, int VERSION
+ * int dictionary size, then each string (modified UTF-8, see DataOutput#writeUTF)
+ * int table count, then for each table:
+ *     UTF name, int row count, int column count
+ *     for each column: UTF name, byte type (see {@link ColumnType})
+ *     for each column: the values (int for STRING and INT, float for FLOAT)
+ * </pre>
+ * The file can be loaded with {@link ColumnarReader}.
+ */
+public class ColumnarWriter
+{
+    public static final int MAGIC = 0x4D545243;             //Identify a columnar file
+    public static final int VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final String filePath;
+    private final boolean isCompressed;                     //Write a gzip stream
+
+    //Strings of all the tables
+    private final HashMap<String, Integer> dictionaryIds = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    private final List<Table> tables = new ArrayList<>();
+
+    /**
+     * @param filePath The file to write
+     * @param isCompressed True to compress the file with gzip
+     */
+    public ColumnarWriter(String filePath, boolean isCompressed)
+    {
+        this.filePath = filePath;
+        this.isCompressed = isCompressed;
+    }
+
+    /**
+     * Add a table to the file.
+     *
+     * @param name The name of the table
+     * @param columnNames The names of the columns
+     * @param types The types of the columns
+     * @return The table, to add its rows
+     */
+    public Table addTable(String name, String[] columnNames, ColumnType[] types)
+    {
+        if(columnNames.length != types.length)
+        {
+            throw new IllegalArgumentException("Each column of " + name + " needs a name and a type");
+        }
+
+        Table table = new Table(name, columnNames.clone(), types.clone());
+        tables.add(table);
+        return table;
+    }
+
+    /**
+     * Write the tables into the file. </br>
+     * The file is replaced atomically.
+     *
+     * @throws IOException If I/O errors occur
+     */
+    public void write() throws IOException
+    {
+        Path path = Paths.get(filePath);
+        Path temp = AtomicFile.createTemp(path);
+
+        try
+        {
+            OutputStream stream = Files.newOutputStream(temp);
+            if(isCompressed)
+            {
+                stream = new GZIPOutputStream(stream, 64 * 1024);
+            }
+
+            try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024)))
+            {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+
+                output.writeInt(dictionary.size());
+                for(String value : dictionary)
+                {
+                    output.writeUTF(value);
+                }
+
+                output.writeInt(tables.size());
+                for(Table table : tables)
+                {
+                    table.write(output);
+                }
+            }
+
+            AtomicFile.commit(temp, path);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public String getFilePath()
+    {
+        return filePath;
+    }
+
+    public boolean isCompressed()
+    {
+        return isCompressed;
+    }
+
+    /**
+     * Return the id of a string, adding it to the dictionary if needed.
+     */
+    private int dictionaryId(String value)
+    {
+        Integer id = dictionaryIds.get(value);
+        if(id == null)
+        {
+            id = dictionary.size();
+            dictionary.add(value);
+            dictionaryIds.put(value, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * A table of the file. </br>
+     * A row is added by setting each of its columns, then
+     * calling {@link #endRow()}.
+     */
+    public class Table
+    {
+        private final String name;
+        private final String[] columnNames;
+        private final ColumnType[] types;
+
+        private int rows = 0;
+        private int[][] intColumns;                 //Values of the STRING and INT columns
+        private float[][] floatColumns;             //Values of the FLOAT columns
+
+        private Table(String name, String[] columnNames, ColumnType[] types)
+        {
+            this.name = name;
+            this.columnNames = columnNames;
+            this.types = types;
+
+            intColumns = new int[types.length][];
+            floatColumns = new float[types.length][];
+            for(int column = 0; column < types.length; column++)
+            {
+                if(types[column] == ColumnType.FLOAT)
+                {
+                    floatColumns[column] = new float[INITIAL_CAPACITY];
+                }
+                else
+                {
+                    intColumns[column] = new int[INITIAL_CAPACITY];
+                }
+            }
+        }
+
+        public void setString(int column, String value)
+        {
+            checkType(column, ColumnType.STRING);
+            intColumns[column][rows] = dictionaryId(value);
+        }
+
+        public void setInt(int column, int value)
+        {
+            checkType(column, ColumnType.INT);
+            intColumns[column][rows] = value;
+        }
+
+        public void setFloat(int column, float value)
+        {
+            checkType(column, ColumnType.FLOAT);
+            floatColumns[column][rows] = value;
+        }
+
+        /**
+         * End the current row: the next values are
+         * in a new row.
+         */
+        public void endRow()
+        {
+            rows++;
+            if(rows == capacity())
+            {
+                grow();
+            }
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getRowCount()
+        {
+            return rows;
+        }
+
+        private void checkType(int column, ColumnType type)
+        {
+            if(types[column] != type)
+            {
+                throw new IllegalArgumentException("The column " + columnNames[column] + " of "
+                        + name + " is a " + types[column] + " column");
+            }
+        }
+
+        private int capacity()
+        {
+            return types.length == 0 ? Integer.MAX_VALUE
+                    : types[0] == ColumnType.FLOAT ? floatColumns[0].length : intColumns[0].length;
+        }
+
+        /**
+         * Double the capacity of the columns.
+         */
+        private void grow()
+        {
+            int capacity = capacity() * 2;
+            for(int column = 0; column < types.length; column++)
+            {
+                if(types[column] == ColumnType.FLOAT)
+                {
+                    floatColumns[column] = Arrays.copyOf(floatColumns[column], capacity);
+                }
+                else
+                {
+                    intColumns[column] = Arrays.copyOf(intColumns[column], capacity);
+                }
+            }
+        }
+
+        private void write(DataOutputStream output) throws IOException
+        {
+            output.writeUTF(name);
+            output.writeInt(rows);
+            output.writeInt(types.length);
+            for(int column = 0; column < types.length; column++)
+            {
+                output.writeUTF(columnNames[column]);
+                output.writeByte(types[column].ordinal());
+            }
+
+            //Each column in one block
+            ByteBuffer buffer = ByteBuffer.allocate(rows * Integer.BYTES);
+            for(int column = 0; column < types.length; column++)
+            {
+                buffer.clear();
+                if(types[column] == ColumnType.FLOAT)
+                {
+                    buffer.asFloatBuffer().put(floatColumns[column], 0, rows);
+                }
+                else
+                {
+                    buffer.asIntBuffer().put(intColumns[column], 0, rows);
+                }
+                output.write(buffer.array(), 0, rows * Integer.BYTES);
+            }
+        }
+    }
+}
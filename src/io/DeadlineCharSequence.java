@@ -0,0 +1,62 @@
+package io;
+
+/**
+ * A text that can only be read until a deadline.
+ * </br>
+ * Given to a regex {@link java.util.regex.Matcher}, it stops
+ * a match that takes too long (catastrophic backtracking):
+ * the clock is checked every {@link #CHECK_INTERVAL} characters
+ * read, and a {@link BudgetExceededException} is thrown after
+ * the deadline.
+ */
+public class DeadlineCharSequence implements CharSequence
+{
+    public static final int CHECK_INTERVAL = 4096;      //Characters read between two checks
+
+    private final CharSequence text;
+    private final long deadline;                        //System.nanoTime() of the deadline
+    private int reads = 0;
+
+    /**
+     * @param text The text
+     * @param deadline The deadline, as given by {@link System#nanoTime()}
+     */
+    public DeadlineCharSequence(CharSequence text, long deadline)
+    {
+        this.text = text;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if(++reads == CHECK_INTERVAL)
+        {
+            reads = 0;
+            if(System.nanoTime() - deadline > 0)
+            {
+                throw new BudgetExceededException("time budget exceeded");
+            }
+        }
+
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length()
+    {
+        return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return new DeadlineCharSequence(text.subSequence(start, end), deadline);
+    }
+
+    @Override
+    public String toString()
+    {
+        return text.toString();
+    }
+}
@@ -0,0 +1,363 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is used to load the content of a file
+ * into a String.
+ * </br>
+ * The file is read with a few bulk reads through a {@link FileChannel},
+ * into buffers that are reused by the next files of the same thread.
+ * <p/>
+ * The charset can be given. Otherwise it is detected: the byte order
+ * mark (BOM) if there is one, else UTF-8 if the content is valid UTF-8,
+ * else the default charset of the platform.
+ * <p/>
+ * A file too large to be loaded at once can be opened as a
+ * {@link Reader} instead (see {@link #open(Path, Charset)}).
+ */
+public final class FileLoader
+{
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 4 * 1024 * 1024;     //Bigger buffers are not kept
+
+    //Buffers of the current thread
+    private static final ThreadLocal<ByteBuffer> BYTES
+            = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+    private static final ThreadLocal<CharBuffer> CHARS
+            = ThreadLocal.withInitial(() -> CharBuffer.allocate(INITIAL_BUFFER_SIZE));
+
+    private FileLoader()
+    {
+    }
+
+    /**
+     * Load the content of a file.
+     *
+     * @param file The file to load
+     * @param charset The charset of the file, or null to detect it
+     * @return The content of the file
+     * @throws IOException If I/O errors occur
+     */
+    public static String load(Path file, Charset charset) throws IOException
+    {
+        return decode(loadBytes(file), charset);
+    }
+
+    /**
+     * Load the bytes of a file, without decoding them
+     * (for example to hash them before, see {@link #decode(ByteBuffer, Charset)}).
+     * </br>
+     * The buffer is the one of the thread: it is only valid
+     * until the next file loaded by the thread.
+     *
+     * @param file The file to load
+     * @return The content of the file, between the position and the limit
+     * @throws IOException If I/O errors occur
+     */
+    public static ByteBuffer loadBytes(Path file) throws IOException
+    {
+        ByteBuffer bytes;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE - 1)
+            {
+                throw new IOException("The file " + file + " is too large");
+            }
+
+            //Read everything (one more byte to see if the file grew)
+            bytes = byteBuffer((int) size + 1);
+            while(channel.read(bytes) != -1)
+            {
+                if(!bytes.hasRemaining())
+                {
+                    bytes = grow(bytes);
+                }
+            }
+            bytes.flip();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Open a file as a stream of characters, to read it without
+     * loading it (for example with a {@link StreamingWordReader}).
+     * </br>
+     * The charset is detected like {@link #load(Path, Charset)} does:
+     * to know if the content is valid UTF-8, the file is read once
+     * more (without keeping its content).
+     *
+     * @param file The file to open
+     * @param charset The charset of the file, or null to detect it
+     * @return A reader of the content, to close
+     * @throws IOException If I/O errors occur
+     */
+    public static Reader open(Path file, Charset charset) throws IOException
+    {
+        InputStream input = new BufferedInputStream(Files.newInputStream(file));
+        try
+        {
+            //Skip the byte order mark
+            input.mark(3);
+            ByteBuffer start = ByteBuffer.wrap(input.readNBytes(3));
+            Charset bomCharset = skipByteOrderMark(start);
+            input.reset();
+            input.skipNBytes(start.position());
+
+            if(charset == null && bomCharset == null)
+            {
+                charset = isUTF8(file) ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+            }
+            else if(charset == null)
+            {
+                charset = bomCharset;
+            }
+
+            return new InputStreamReader(input, charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+        }
+        catch(IOException | RuntimeException e)
+        {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check if the content of a file is valid UTF-8,
+     * by decoding it by chunks.
+     *
+     * @param file The file
+     * @return True if the content is valid UTF-8
+     * @throws IOException If I/O errors occur
+     */
+    private static boolean isUTF8(Path file) throws IOException
+    {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer bytes = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        try(SeekableByteChannel channel = Files.newByteChannel(file))
+        {
+            boolean isEnd = false;
+            while(!isEnd)
+            {
+                isEnd = channel.read(bytes) == -1;
+                bytes.flip();
+
+                CoderResult result;
+                do
+                {
+                    chars.clear();
+                    result = decoder.decode(bytes, chars, isEnd);
+                } while(result.isOverflow());
+
+                if(result.isError())
+                {
+                    return false;
+                }
+                bytes.compact();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decode the content of a file that is already in memory
+     * (for example a blob of a git repository).
+     *
+     * @param bytes The content
+     * @param charset The charset of the content, or null to detect it
+     * @return The decoded text
+     * @throws IOException If the content can't be decoded
+     */
+    public static String decode(byte[] bytes, Charset charset) throws IOException
+    {
+        return decode(ByteBuffer.wrap(bytes), charset);
+    }
+
+    /**
+     * Decode the bytes of a file (see {@link #loadBytes(Path)}). </br>
+     * The bytes are consumed: the position of the buffer
+     * moves to its limit.
+     *
+     * @param bytes The bytes
+     * @param charset The charset, or null to detect it
+     * @return The decoded text
+     * @throws CharacterCodingException Never (malformed bytes are replaced)
+     */
+    public static String decode(ByteBuffer bytes, Charset charset) throws CharacterCodingException
+    {
+        Charset bomCharset = skipByteOrderMark(bytes);
+
+        if(charset == null && bomCharset == null)
+        {
+            //Try UTF-8, and fallback to the default charset
+            int start = bytes.position();
+            String text = decode(bytes, StandardCharsets.UTF_8, CodingErrorAction.REPORT);
+            if(text != null)
+            {
+                return text;
+            }
+
+            bytes.position(start);
+            charset = Charset.defaultCharset();
+        }
+        else if(charset == null)
+        {
+            charset = bomCharset;
+        }
+
+        return decode(bytes, charset, CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Decode the bytes with the given charset, in the
+     * char buffer of the thread.
+     *
+     * @param bytes The bytes
+     * @param charset The charset
+     * @param onError What to do with malformed bytes
+     * @return The decoded text, or null if the bytes are malformed (with REPORT)
+     * @throws CharacterCodingException Never (errors are replaced or reported with null)
+     */
+    private static String decode(ByteBuffer bytes, Charset charset, CodingErrorAction onError)
+            throws CharacterCodingException
+    {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(onError)
+                .onUnmappableCharacter(onError);
+
+        CharBuffer chars = charBuffer((int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if(result.isError())
+        {
+            return null;
+        }
+        if(result.isUnderflow())
+        {
+            result = decoder.flush(chars);
+        }
+        if(!result.isUnderflow())
+        {
+            result.throwException();            //Can't happen: the buffer is large enough
+        }
+
+        chars.flip();
+        return chars.toString();
+    }
+
+    /**
+     * Skip the byte order mark at the start of the bytes,
+     * if there is one.
+     *
+     * @param bytes The bytes
+     * @return The charset of the byte order mark, or null if there is none
+     */
+    private static Charset skipByteOrderMark(ByteBuffer bytes)
+    {
+        int start = bytes.position();
+        int remaining = bytes.remaining();
+        int b0 = remaining > 0 ? bytes.get(start) & 0xFF : -1;
+        int b1 = remaining > 1 ? bytes.get(start + 1) & 0xFF : -1;
+        int b2 = remaining > 2 ? bytes.get(start + 2) & 0xFF : -1;
+
+        if(b0 == 0xEF && b1 == 0xBB && b2 == 0xBF)
+        {
+            bytes.position(start + 3);
+            return StandardCharsets.UTF_8;
+        }
+        else if(b0 == 0xFE && b1 == 0xFF)
+        {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+        else if(b0 == 0xFF && b1 == 0xFE)
+        {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+
+        return null;
+    }
+
+    /**
+     * Return the (empty) byte buffer of the thread, with
+     * at least the given capacity.
+     */
+    private static ByteBuffer byteBuffer(int capacity)
+    {
+        ByteBuffer buffer = BYTES.get();
+        if(buffer.capacity() < capacity)
+        {
+            buffer = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+            if(buffer.capacity() <= MAX_POOLED_BUFFER_SIZE)
+            {
+                BYTES.set(buffer);
+            }
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return the (empty) char buffer of the thread, with
+     * at least the given capacity.
+     */
+    private static CharBuffer charBuffer(int capacity)
+    {
+        CharBuffer buffer = CHARS.get();
+        if(buffer.capacity() < capacity)
+        {
+            buffer = CharBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+            if(buffer.capacity() <= MAX_POOLED_BUFFER_SIZE)
+            {
+                CHARS.set(buffer);
+            }
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Double the capacity of a full buffer (the file grew while reading).
+     */
+    private static ByteBuffer grow(ByteBuffer buffer)
+    {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+
+        if(bigger.capacity() <= MAX_POOLED_BUFFER_SIZE)
+        {
+            BYTES.set(bigger);
+        }
+        return bigger;
+    }
+}
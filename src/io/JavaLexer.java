@@ -0,0 +1,395 @@
+package io;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is used to read through a java source by
+ * separating it into words, in a single pass over the text.
+ * </br>
+ * It produces the same words as a {@link WordReader} built with
+ * the parameters of {@link counters.ClassCounter}, but the separators
+ * are recognized by a character state machine instead of a regex.
+ * <p/>
+ * The words are: newlines, separators (;=[]{}()), string and char
+ * literals, // comments, multi-line comments and everything in between.
+ * <p/>
+ * Literals are scanned character by character. Only a literal that
+ * contains a backslash is handed to the literal regex, so that escaped
+ * quotes are resolved exactly like the {@link WordReader} does.
+ * <p/>
+ * Without literal regex (see {@link #JavaLexer(String, WordGrammar)}),
+ * the lexer never uses a regex: the backslash escapes the next character,
+ * as in java. The time is then always linear, but a few unusual literals
+ * may be separated differently.
+ */
+public class JavaLexer implements Tokenizer
+{
+    private final Matcher stringMatcher;        //Matches a string literal (only used for escapes), can be null
+    private final Matcher charMatcher;          //Matches a char literal (only used for escapes), can be null
+
+    private final String text;                  //The text to read, as a String
+    private CharSequence input;                 //The text given to the regex (with a deadline or not)
+    private final int length;                   //Length of the text
+    private int head;                           //The head of the reader, indicate the current character to read
+    private int tokenStart = 0;                 //Offsets of the current token
+    private int tokenEnd = 0;
+
+    //Last literal found while looking for the end of a word (avoid scanning it twice)
+    private int literalStart = -1;
+    private int literalEnd = -1;
+
+    private final WordGrammar grammar;          //Used to compile the regex of match()
+    private Matcher matcher;                    //Matcher of the last regex of match(), reused
+
+    /**
+     * @param text The text to read
+     * @param grammar The (shared) grammar used to compile the regex
+     * @param stringLiteral Regex that matches a string literal
+     * @param charLiteral Regex that matches a char literal
+     */
+    public JavaLexer(String text, WordGrammar grammar, String stringLiteral, String charLiteral)
+    {
+        this.text = text;
+        this.input = text;
+        this.length = text.length();
+        this.grammar = grammar;
+        this.stringMatcher = grammar.compile(stringLiteral).matcher(text);
+        this.charMatcher = grammar.compile(charLiteral).matcher(text);
+
+        head = 0;
+    }
+
+    /**
+     * Create a lexer that never uses a regex to separate the
+     * words: the literals follow the java escapes.
+     *
+     * @param text The text to read
+     * @param grammar The (shared) grammar used to compile the regex of {@link #match(String)}
+     */
+    public JavaLexer(String text, WordGrammar grammar)
+    {
+        this.text = text;
+        this.input = text;
+        this.length = text.length();
+        this.grammar = grammar;
+        this.stringMatcher = null;
+        this.charMatcher = null;
+
+        head = 0;
+    }
+
+    @Override
+    public char peekChar()
+    {
+        if(head >= length)
+        {
+            return '\0';
+        }
+
+        return text.charAt(head);
+    }
+
+    /**
+     * Read the next word in the text. A word is a continuous string of characters
+     * enclosed by word-separator. Word-separator also count as word, unless they
+     * are whitespace. <br/>
+     * The end-of-file always mark the end of a word.
+     * <p/>
+     * This method moves the head of the read to the end of the word.
+     * <p/>
+     * Return null if at the end of the text.
+     *
+     * @return A word, as a String.
+     */
+    @Override
+    public String readNexWord()
+    {
+        if(nextToken() == null) return null;
+
+        return text.substring(tokenStart, tokenEnd);
+    }
+
+    @Override
+    public TokenKind nextToken()
+    {
+        //Return null at the end of the text
+        if(head >= length) return null;
+
+        //Skip leading whitespace
+        while(head < length && isWhiteSpace(text.charAt(head)))
+        {
+            head++;
+        }
+
+        int wordStart = head;
+        int wordEnd;
+
+        if(head >= length)                                  //Only whitespace left -> empty word
+        {
+            wordEnd = head;
+        }
+        else if(startsWith(head, '/', '*'))                 //Multi-line comment
+        {
+            wordEnd = text.indexOf("*/", head + 1);
+            if(wordEnd == -1)
+            {
+                throw new IllegalStateException("Unterminated comment at " + head);
+            }
+            wordEnd += 2;
+        }
+        else
+        {
+            //Treat the separator as a word
+            wordEnd = separatorEnd(head);
+
+            //Read the word up to the next separator
+            if(wordEnd == -1)
+            {
+                wordEnd = head + 1;
+                while(wordEnd < length && separatorEnd(wordEnd) == -1)
+                {
+                    wordEnd++;
+                }
+            }
+        }
+
+        head = wordEnd;
+        tokenStart = wordStart;
+        tokenEnd = wordEnd;
+        return TokenKind.of(text, wordStart, wordEnd);
+    }
+
+    @Override
+    public int getTokenStart()
+    {
+        return tokenStart;
+    }
+
+    @Override
+    public int getTokenEnd()
+    {
+        return tokenEnd;
+    }
+
+    @Override
+    public char getTokenChar(int index)
+    {
+        return text.charAt(tokenStart + index);
+    }
+
+    /**
+     * {@inheritDoc}
+     * </br>
+     * The regex is matched in place, the text isn't copied.
+     * The matcher is reused while the regex doesn't change.
+     */
+    @Override
+    public boolean match(String regex)
+    {
+        Pattern pattern = grammar.compile(regex);
+        if(matcher == null || matcher.pattern() != pattern)
+        {
+            matcher = pattern.matcher(input);
+        }
+
+        return matcher.region(head, length).lookingAt();
+    }
+
+    @Override
+    public void reset()
+    {
+        head = 0;
+    }
+
+    @Override
+    public void setDeadline(long deadline)
+    {
+        input = new DeadlineCharSequence(text, deadline);
+        matcher = null;
+
+        if(stringMatcher != null)
+        {
+            stringMatcher.reset(input);
+            charMatcher.reset(input);
+        }
+    }
+
+    @Override
+    public String getText()
+    {
+        return text;
+    }
+
+    @Override
+    public int getHead()
+    {
+        return head;
+    }
+
+    /**
+     * Return the end of the separator starting at the
+     * given index. </br>
+     * The start of a multi-line comment is a separator
+     * of length 2.
+     *
+     * @param i Index in the text
+     * @return The index after the separator, or -1 if no separator starts at i
+     */
+    private int separatorEnd(int i)
+    {
+        if(i >= length) return length;                      //End-of-file
+
+        char c = text.charAt(i);
+        switch(c)
+        {
+            case '\n': case ' ': case '\t': case '\r':
+            case ';': case '=': case '[': case ']':
+            case '{': case '}': case '(': case ')':
+                return i + 1;
+            case '*':
+                return startsWith(i, '*', '/') ? i + 2 : -1;
+            case '/':
+                if(startsWith(i, '/', '*')) return i + 2;
+                if(startsWith(i, '/', '/')) return lineCommentEnd(i);
+                return -1;
+            case '"':
+            case '\'':
+                return literalEnd(i, c);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Return the end of the // comment starting at i.
+     * The comment stops before any line terminator.
+     *
+     * @param i Index of the comment
+     * @return The index after the comment
+     */
+    private int lineCommentEnd(int i)
+    {
+        int end = i + 2;
+        while(end < length && !isLineTerminator(text.charAt(end)))
+        {
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Return the end of the literal (string or char) starting
+     * at i. </br>
+     * The literal is scanned up to its closing quote. A literal with
+     * a backslash is matched with the literal regex instead.
+     *
+     * @param i Index of the opening quote
+     * @param quote The quote character (" or ')
+     * @return The index after the literal, or -1 if there is no literal at i
+     */
+    private int literalEnd(int i, char quote)
+    {
+        if(i == literalStart) return literalEnd;
+
+        int end = -1;
+        if(stringMatcher == null)
+        {
+            end = javaLiteralEnd(i, quote);
+        }
+        else if(i + 1 < length && text.charAt(i + 1) == quote)   //Empty literal
+        {
+            end = i + 2;
+        }
+        else
+        {
+            for(int j = i + 1; j < length; j++)
+            {
+                char c = text.charAt(j);
+                if(c == '\\')                               //Escape -> let the regex decide
+                {
+                    end = matchLiteral(i, quote);
+                    break;
+                }
+                else if(c == quote)
+                {
+                    char next = j + 1 < length ? text.charAt(j + 1) : '\0';
+                    if(next == '\\')
+                    {
+                        end = matchLiteral(i, quote);
+                    }
+                    else
+                    {
+                        //A doubled quote closes the literal one character later (like the regex)
+                        end = next == quote ? j + 2 : j + 1;
+                    }
+                    break;
+                }
+            }
+        }
+
+        literalStart = i;
+        literalEnd = end;
+        return end;
+    }
+
+    /**
+     * Return the end of the literal starting at i, with the
+     * java escapes: a backslash escapes the next character.
+     *
+     * @param i Index of the opening quote
+     * @param quote The quote character (" or ')
+     * @return The index after the literal, or -1 if it is not closed
+     */
+    private int javaLiteralEnd(int i, char quote)
+    {
+        for(int j = i + 1; j < length; j++)
+        {
+            char c = text.charAt(j);
+            if(c == '\\')
+            {
+                j++;                                        //Skip the escaped character
+            }
+            else if(c == quote)
+            {
+                return j + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Match the literal regex at the given index.
+     *
+     * @param i Index of the opening quote
+     * @param quote The quote character (" or ')
+     * @return The index after the literal, or -1 if the regex doesn't match
+     */
+    private int matchLiteral(int i, char quote)
+    {
+        Matcher matcher = quote == '"' ? stringMatcher : charMatcher;
+        matcher.region(i, length);
+
+        return matcher.lookingAt() ? matcher.end() : -1;
+    }
+
+    private boolean startsWith(int i, char first, char second)
+    {
+        return i + 1 < length && text.charAt(i) == first && text.charAt(i + 1) == second;
+    }
+
+    private static boolean isWhiteSpace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    /**
+     * Same line terminators as the regex '.'
+     */
+    private static boolean isLineTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,216 @@
+package io;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The console output of the program.
+ * </br>
+ * The messages are written asynchronously: they are queued
+ * (without blocking) and a single background thread writes
+ * them by batches. The order of the messages is kept.
+ * <p/>
+ * Levels:
+ * <ul>
+ *     <li>QUIET: only the errors</li>
+ *     <li>INFO: the errors, the progress and the summaries (default)</li>
+ *     <li>VERBOSE: everything, with each folder and class visited</li>
+ * </ul>
+ */
+public final class Log
+{
+    public enum Level
+    {
+        QUIET,
+        INFO,
+        VERBOSE
+    }
+
+    private static final int MAX_BATCH = 1024;                  //Messages written at once
+    private static final long SHUTDOWN_FLUSH_TIMEOUT = 2000;    //ms
+
+    private static volatile Level level = Level.INFO;
+
+    private static final LinkedBlockingQueue<Message> QUEUE = new LinkedBlockingQueue<>();
+    private static Thread writer;                               //Started with the first message
+
+    private Log()
+    {
+    }
+
+    public static Level getLevel()
+    {
+        return level;
+    }
+
+    public static void setLevel(Level level)
+    {
+        Log.level = level;
+    }
+
+    public static boolean isInfo()
+    {
+        return level.compareTo(Level.INFO) >= 0;
+    }
+
+    public static boolean isVerbose()
+    {
+        return level == Level.VERBOSE;
+    }
+
+    /**
+     * Write an error (on the error output), at every level.
+     *
+     * @param message The message
+     */
+    public static void error(String message)
+    {
+        enqueue(new Message(message, true, null));
+    }
+
+    /**
+     * Write a message if the level is INFO or VERBOSE.
+     *
+     * @param message The message
+     */
+    public static void info(String message)
+    {
+        if(isInfo())
+        {
+            enqueue(new Message(message, false, null));
+        }
+    }
+
+    /**
+     * Write a message if the level is VERBOSE.
+     *
+     * @param message The message
+     */
+    public static void verbose(String message)
+    {
+        if(isVerbose())
+        {
+            enqueue(new Message(message, false, null));
+        }
+    }
+
+    /**
+     * Wait until all the queued messages are written.
+     */
+    public static void flush()
+    {
+        flush(0);
+    }
+
+    /**
+     * Wait until all the queued messages are written.
+     *
+     * @param timeout The maximum time to wait in milliseconds, 0 to wait forever
+     */
+    public static void flush(long timeout)
+    {
+        if(writer == null) return;
+
+        CountDownLatch written = new CountDownLatch(1);
+        enqueue(new Message(null, false, written));
+        try
+        {
+            if(timeout == 0)
+            {
+                written.await();
+            }
+            else
+            {
+                written.await(timeout, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void enqueue(Message message)
+    {
+        startWriter();
+        QUEUE.add(message);
+    }
+
+    private static synchronized void startWriter()
+    {
+        if(writer != null) return;
+
+        writer = new Thread(Log::writeMessages, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        //Write the last messages when the program stops
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_FLUSH_TIMEOUT)));
+    }
+
+    /**
+     * Loop of the writer thread: write the messages by batches.
+     */
+    private static void writeMessages()
+    {
+        List<Message> batch = new ArrayList<>(MAX_BATCH);
+        while(true)
+        {
+            try
+            {
+                batch.add(QUEUE.take());
+            }
+            catch(InterruptedException e)
+            {
+                return;
+            }
+            QUEUE.drainTo(batch, MAX_BATCH - 1);
+
+            PrintStream out = System.out;
+            PrintStream err = System.err;
+            for(Message message : batch)
+            {
+                if(message.written != null)
+                {
+                    out.flush();
+                    err.flush();
+                    message.written.countDown();
+                }
+                else if(message.isError)
+                {
+                    out.flush();                    //Keep the order with the previous messages
+                    err.println(message.text);
+                    err.flush();
+                }
+                else
+                {
+                    out.println(message.text);
+                }
+            }
+            out.flush();
+
+            batch.clear();
+        }
+    }
+
+    /**
+     * A queued message, or a flush request.
+     */
+    private static class Message
+    {
+        private final String text;
+        private final boolean isError;
+        private final CountDownLatch written;       //Flush request if not null
+
+        private Message(String text, boolean isError, CountDownLatch written)
+        {
+            this.text = text;
+            this.isError = isError;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io;
+
+import java.io.IOException;
+
+/**
+ * Receive the rows of a table, one at a time.
+ */
+public interface RowSink
+{
+    /**
+     * Add a row at the end of the table.
+     *
+     * @param row The columns of the row
+     * @throws IOException If I/O errors occur
+     */
+    void writeRow(String... row) throws IOException;
+}
@@ -0,0 +1,437 @@
+package io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is used to read through a java source by
+ * separating it into words, like a {@link JavaLexer} without
+ * literal regex, without having the whole text in memory.
+ * </br>
+ * The text is read from a {@link Reader} into a window that slides
+ * with the words, like a {@link StreamingWordReader}: the characters
+ * before the current word are dropped when more characters are
+ * needed. The window grows when a word doesn't fit in it, up to a
+ * maximum size, so the memory stays bounded whatever the size of
+ * the text.
+ * <p/>
+ * The words are the same as the ones of {@link JavaLexer#JavaLexer(String, WordGrammar)}:
+ * the literals follow the java escapes and no regex is used, so the
+ * time is linear. A word longer than the maximum window (or a quote
+ * that isn't closed within the window) throws a {@link BudgetExceededException}.
+ * <p/>
+ * The text is not kept: {@link #getText()} returns null, and
+ * {@link #reset()} only works while the start of the text is
+ * still in the window.
+ */
+public class StreamingJavaLexer implements Tokenizer
+{
+    private final Reader source;
+    private final WordGrammar grammar;          //Used to compile the regex of match()
+    private final int maxWindowSize;
+    private Matcher matcher;                    //Matcher of the last regex of match(), reused
+
+    private char[] window;                      //The characters of the window
+    private CharSequence chars;                 //The window
+    private int windowStart = 0;                //Index in the text of the first character of the window
+    private int windowLength = 0;               //Number of characters in the window
+    private boolean isEndOfText = false;        //The last character of the text is in the window
+
+    private int head = 0;                       //The head of the reader, index in the text of the current character
+    private int tokenStart = 0;                 //Offsets of the current token, in the text
+    private int tokenEnd = 0;
+    private int kept = 0;                       //First character kept in the window (start of the current word)
+
+    //Last literal found while looking for the end of a word (avoid scanning it twice)
+    private int literalStart = -1;
+    private int literalEnd = -1;
+
+    /**
+     * @param reader The text to read
+     * @param grammar The (shared) grammar used to compile the regex of {@link #match(String)}
+     */
+    public StreamingJavaLexer(Reader reader, WordGrammar grammar)
+    {
+        this(reader, grammar, StreamingWordReader.DEFAULT_WINDOW_SIZE, StreamingWordReader.DEFAULT_MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * @param reader The text to read
+     * @param grammar The (shared) grammar used to compile the regex of {@link #match(String)}
+     * @param windowSize Initial size of the window, in characters
+     * @param maxWindowSize Maximum size of the window, in characters
+     */
+    public StreamingJavaLexer(Reader reader, WordGrammar grammar, int windowSize, int maxWindowSize)
+    {
+        if(windowSize < 2 || maxWindowSize < windowSize)
+        {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize + " (max " + maxWindowSize + ")");
+        }
+
+        this.source = reader;
+        this.grammar = grammar;
+        this.maxWindowSize = maxWindowSize;
+        this.window = new char[windowSize];
+        this.chars = CharBuffer.wrap(window, 0, 0);
+    }
+
+    @Override
+    public char peekChar()
+    {
+        if(!has(head))
+        {
+            return '\0';
+        }
+
+        return charAt(head);
+    }
+
+    @Override
+    public String readNexWord()
+    {
+        if(nextToken() == null) return null;
+
+        return new String(window, tokenStart - windowStart, tokenEnd - tokenStart);
+    }
+
+    @Override
+    public TokenKind nextToken()
+    {
+        //Return null at the end of the text
+        kept = head;
+        if(!has(head)) return null;
+
+        //Skip leading whitespace
+        while(has(head) && isWhiteSpace(charAt(head)))
+        {
+            head++;
+            kept = head;
+        }
+
+        int wordStart = head;
+        int wordEnd;
+
+        if(!has(head))                                      //Only whitespace left -> empty word
+        {
+            wordEnd = head;
+        }
+        else if(startsWith(head, '/', '*'))                 //Multi-line comment
+        {
+            wordEnd = commentEnd(head);
+        }
+        else
+        {
+            //Treat the separator as a word
+            wordEnd = separatorEnd(head);
+
+            //Read the word up to the next separator
+            if(wordEnd == -1)
+            {
+                wordEnd = head + 1;
+                while(has(wordEnd) && separatorEnd(wordEnd) == -1)
+                {
+                    wordEnd++;
+                }
+            }
+        }
+
+        head = wordEnd;
+        tokenStart = wordStart;
+        tokenEnd = wordEnd;
+        return TokenKind.of(chars, wordStart - windowStart, wordEnd - windowStart);
+    }
+
+    @Override
+    public int getTokenStart()
+    {
+        return tokenStart;
+    }
+
+    @Override
+    public int getTokenEnd()
+    {
+        return tokenEnd;
+    }
+
+    @Override
+    public char getTokenChar(int index)
+    {
+        return window[tokenStart - windowStart + index];
+    }
+
+    /**
+     * {@inheritDoc}
+     * </br>
+     * If the regex reached the end of the window, more
+     * characters are read and the text is matched again.
+     */
+    @Override
+    public boolean match(String regex)
+    {
+        Pattern pattern = grammar.compile(regex);
+        if(matcher == null || matcher.pattern() != pattern)
+        {
+            matcher = pattern.matcher(chars);
+        }
+
+        while(true)
+        {
+            matcher.reset(chars);
+            matcher.region(head - windowStart, windowLength);
+            boolean isMatch = matcher.lookingAt();
+            if(!matcher.hitEnd() || !readMore())
+            {
+                return isMatch;
+            }
+        }
+    }
+
+    /**
+     * Return the head to the start of the text.
+     *
+     * @throws IllegalStateException If the start of the text is
+     *                               no longer in the window
+     */
+    @Override
+    public void reset()
+    {
+        if(windowStart != 0)
+        {
+            throw new IllegalStateException("The start of the text is no longer in the window");
+        }
+
+        head = 0;
+        kept = 0;
+    }
+
+    /**
+     * No regex is used to separate the words:
+     * the time is always linear.
+     */
+    @Override
+    public void setDeadline(long deadline)
+    {
+    }
+
+    /**
+     * The text is not kept in memory.
+     *
+     * @return null
+     */
+    @Override
+    public String getText()
+    {
+        return null;
+    }
+
+    @Override
+    public int getHead()
+    {
+        return head;
+    }
+
+    /**
+     * Return the end of the separator starting at the
+     * given index (see {@link JavaLexer}).
+     *
+     * @param i Index in the text
+     * @return The index after the separator, or -1 if no separator starts at i
+     */
+    private int separatorEnd(int i)
+    {
+        if(!has(i)) return windowStart + windowLength;      //End-of-file
+
+        char c = charAt(i);
+        switch(c)
+        {
+            case '\n': case ' ': case '\t': case '\r':
+            case ';': case '=': case '[': case ']':
+            case '{': case '}': case '(': case ')':
+                return i + 1;
+            case '*':
+                return startsWith(i, '*', '/') ? i + 2 : -1;
+            case '/':
+                if(startsWith(i, '/', '*')) return i + 2;
+                if(startsWith(i, '/', '/')) return lineCommentEnd(i);
+                return -1;
+            case '"':
+            case '\'':
+                return literalEnd(i, c);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Return the end of the multi-line comment starting at i.
+     * Like {@link String#indexOf(String, int)} from i + 1, so
+     * "/*&#47;" is a comment.
+     *
+     * @param i Index of the comment
+     * @return The index after the comment
+     */
+    private int commentEnd(int i)
+    {
+        for(int j = i + 1; has(j + 1); j++)
+        {
+            if(charAt(j) == '*' && charAt(j + 1) == '/')
+            {
+                return j + 2;
+            }
+        }
+
+        throw new IllegalStateException("Unterminated comment at " + i);
+    }
+
+    /**
+     * Return the end of the // comment starting at i.
+     * The comment stops before any line terminator.
+     *
+     * @param i Index of the comment
+     * @return The index after the comment
+     */
+    private int lineCommentEnd(int i)
+    {
+        int end = i + 2;
+        while(has(end) && !isLineTerminator(charAt(end)))
+        {
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Return the end of the literal starting at i, with the
+     * java escapes: a backslash escapes the next character.
+     *
+     * @param i Index of the opening quote
+     * @param quote The quote character (" or ')
+     * @return The index after the literal, or -1 if it is not closed
+     */
+    private int literalEnd(int i, char quote)
+    {
+        if(i == literalStart) return literalEnd;
+
+        int end = -1;
+        for(int j = i + 1; has(j); j++)
+        {
+            char c = charAt(j);
+            if(c == '\\')
+            {
+                j++;                                        //Skip the escaped character
+            }
+            else if(c == quote)
+            {
+                end = j + 1;
+                break;
+            }
+        }
+
+        literalStart = i;
+        literalEnd = end;
+        return end;
+    }
+
+    private boolean startsWith(int i, char first, char second)
+    {
+        return has(i + 1) && charAt(i) == first && charAt(i + 1) == second;
+    }
+
+    /**
+     * Return a character of the window. </br>
+     * It must have been read (see {@link #has(int)}).
+     */
+    private char charAt(int i)
+    {
+        return window[i - windowStart];
+    }
+
+    /**
+     * Check if the text has a character at the given index,
+     * after reading more characters if needed.
+     *
+     * @param i Index in the text, not before the current word
+     * @return False if the text is shorter
+     */
+    private boolean has(int i)
+    {
+        while(i - windowStart >= windowLength)
+        {
+            if(!readMore())
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read more characters of the text into the window. </br>
+     * When the window is full, the characters before the current
+     * word are dropped, or the window grows if there are none.
+     *
+     * @return False at the end of the text
+     */
+    private boolean readMore()
+    {
+        if(isEndOfText) return false;
+
+        if(windowLength == window.length)
+        {
+            int dropped = kept - windowStart;
+            if(dropped > 0)
+            {
+                System.arraycopy(window, dropped, window, 0, windowLength - dropped);
+                windowStart = kept;
+                windowLength -= dropped;
+            }
+            else if(window.length < maxWindowSize)
+            {
+                char[] larger = new char[(int) Math.min((long) window.length * 2, maxWindowSize)];
+                System.arraycopy(window, 0, larger, 0, windowLength);
+                window = larger;
+            }
+            else
+            {
+                throw new BudgetExceededException("window of " + maxWindowSize + " characters exceeded");
+            }
+        }
+
+        try
+        {
+            int read = source.read(window, windowLength, window.length - windowLength);
+            if(read == -1)
+            {
+                isEndOfText = true;
+                return false;
+            }
+            windowLength += read;
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        chars = CharBuffer.wrap(window, 0, windowLength);
+        return true;
+    }
+
+    private static boolean isWhiteSpace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    /**
+     * Same line terminators as the regex '.'
+     */
+    private static boolean isLineTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,445 @@
+package io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is used to read through a text by
+ * separating it into words, like a {@link WordReader},
+ * without having the whole text in memory.
+ * </br>
+ * The text is read from a {@link Reader} or a {@link CharBuffer}
+ * into a window that slides with the head of the reader: the
+ * characters before the head are dropped when more characters
+ * are needed. The window grows when a word (or a match) doesn't
+ * fit in it, up to a maximum size, so the memory stays bounded
+ * whatever the size of the text.
+ * <p/>
+ * A regex that reaches the end of the window is matched again
+ * after reading more characters, so the words are the same as
+ * the ones of a {@link WordReader} with the same grammar (as long
+ * as the regex don't look behind the head). A word longer than the
+ * maximum window throws a {@link BudgetExceededException}.
+ * <p/>
+ * The text is not kept: {@link #getText()} returns null, and
+ * {@link #reset()} only works while the start of the text is
+ * still in the window, or if the source is a {@link CharBuffer}.
+ */
+public class StreamingWordReader implements Tokenizer
+{
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024;           //Initial size of the window (characters)
+    public static final int DEFAULT_MAX_WINDOW_SIZE = 1024 * 1024;      //Maximum size of the window (characters)
+
+    private final WordGrammar grammar;
+    private final Readable source;              //Reader or CharBuffer
+    private final int sourceStart;              //Position of the text in the CharBuffer (unused for a Reader)
+    private final int maxWindowSize;
+
+    //Matchers of the grammar, reused for every word
+    private final Matcher whiteSpaces;
+    private final Matcher wordSeparators;
+    private final Matcher[] delimiterStarts;
+    private final Matcher[] delimiterEnds;
+    private Matcher matcher;                    //Matcher of the last regex of match(), reused
+
+    private char[] window;                      //The characters of the window
+    private int windowStart = 0;                //Index in the text of the first character of the window
+    private int windowLength = 0;               //Number of characters in the window
+    private boolean isEndOfText = false;        //The last character of the text is in the window
+
+    private CharSequence chars;                 //The window
+    private CharSequence input;                 //The window given to the regex (with a deadline or not)
+    private long deadline;
+    private boolean hasDeadline = false;
+
+    private int head = 0;                       //The head of the reader, index in the text of the current character
+    private int tokenStart = 0;                 //Offsets of the current token, in the text
+    private int tokenEnd = 0;
+
+    /**
+     * @param reader The text to read
+     * @param grammar The (shared) grammar used to separate the text
+     */
+    public StreamingWordReader(Reader reader, WordGrammar grammar)
+    {
+        this(reader, grammar, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * @param reader The text to read
+     * @param grammar The (shared) grammar used to separate the text
+     * @param windowSize Initial size of the window, in characters
+     * @param maxWindowSize Maximum size of the window, in characters
+     */
+    public StreamingWordReader(Reader reader, WordGrammar grammar, int windowSize, int maxWindowSize)
+    {
+        this(reader, -1, grammar, windowSize, maxWindowSize);
+    }
+
+    /**
+     * Read the text between the position and the limit of
+     * the buffer. The position of the buffer is moved while
+     * reading.
+     *
+     * @param buffer The text to read
+     * @param grammar The (shared) grammar used to separate the text
+     */
+    public StreamingWordReader(CharBuffer buffer, WordGrammar grammar)
+    {
+        this(buffer, buffer.position(), grammar, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_WINDOW_SIZE);
+    }
+
+    private StreamingWordReader(Readable source, int sourceStart, WordGrammar grammar,
+                                int windowSize, int maxWindowSize)
+    {
+        if(windowSize < 1 || maxWindowSize < windowSize)
+        {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize + " (max " + maxWindowSize + ")");
+        }
+
+        this.source = source;
+        this.sourceStart = sourceStart;
+        this.grammar = grammar;
+        this.maxWindowSize = maxWindowSize;
+        this.window = new char[windowSize];
+        this.chars = CharBuffer.wrap(window, 0, 0);
+        this.input = chars;
+
+        this.whiteSpaces = grammar.getWhiteSpaces().matcher(input);
+        this.wordSeparators = grammar.getWordSeparators().matcher(input);
+
+        delimiterStarts = new Matcher[grammar.getDelimiterCount()];
+        delimiterEnds = new Matcher[grammar.getDelimiterCount()];
+        for(int i = 0; i < delimiterStarts.length; i++)
+        {
+            delimiterStarts[i] = grammar.getDelimiterStart(i).matcher(input);
+            delimiterEnds[i] = grammar.getDelimiterEnd(i).matcher(input);
+        }
+    }
+
+    /**
+     * Look at the next character. <br/>
+     * Returns \0 if at the end of the text.
+     *
+     * @return A character
+     */
+    @Override
+    public char peekChar()
+    {
+        if(!hasNextChar())
+        {
+            return '\0';
+        }
+
+        return window[head - windowStart];
+    }
+
+    /**
+     * Read the next word in the text (see {@link WordReader#readNexWord()}).
+     * <p/>
+     * Return null if at the end of the text.
+     *
+     * @return A word, as a String.
+     */
+    @Override
+    public String readNexWord()
+    {
+        if(nextToken() == null) return null;
+
+        return new String(window, tokenStart - windowStart, tokenEnd - tokenStart);
+    }
+
+    /**
+     * The token is only available until the next call to
+     * {@link #nextToken()} or {@link #match(String)}, because
+     * the window can then move.
+     */
+    @Override
+    public TokenKind nextToken()
+    {
+        int wordStart = -1;
+        int wordEnd = -1;
+
+        //Return null at the end of the text
+        if(!hasNextChar()) return null;
+
+        //Skip leading whitespace
+        while(match(whiteSpaces))
+        {
+            head++;                         //move head to the next character
+        }
+
+        //Check delimiters
+        for(int i = 0; i < delimiterStarts.length; i++)
+        {
+            if(match(delimiterStarts[i]))
+            {
+                //Extract the word
+                wordStart = head;
+                wordEnd = moveToFirst(delimiterEnds[i], true);
+                if(wordEnd == -1)
+                {
+                    throw new IllegalStateException("Unterminated delimiter at " + head);
+                }
+
+                break;              //Stop the loop
+            }
+        }
+
+        if(wordStart == -1)         //If the word started, then we matched a delimiter
+        {
+            //Check if the word start with a separator
+            if (match(wordSeparators))
+            {
+                //Treat the separator as a word
+                wordStart = head;
+                wordEnd = moveToFirst(wordSeparators, true);       //should always be > 0
+            }
+            //Read the word
+            else
+            {
+                wordStart = head;
+
+                //Move to the next word separator
+                wordEnd = moveToFirst(wordSeparators, false);
+
+                //No word separators -> probably end-of-file
+                if (wordEnd == -1)
+                {
+                    wordEnd = windowStart + windowLength;
+                }
+            }
+        }
+
+        tokenStart = wordStart;
+        tokenEnd = wordEnd;
+        return TokenKind.of(chars, wordStart - windowStart, wordEnd - windowStart);
+    }
+
+    @Override
+    public int getTokenStart()
+    {
+        return tokenStart;
+    }
+
+    @Override
+    public int getTokenEnd()
+    {
+        return tokenEnd;
+    }
+
+    @Override
+    public char getTokenChar(int index)
+    {
+        return window[tokenStart - windowStart + index];
+    }
+
+    /**
+     * Check if the text at the head of the reader
+     * matches the given regex. </br>
+     * The entire text does not have to match the regex.
+     *
+     * @param regex The regex to match
+     * @return True if there is a match, false otherwise
+     */
+    @Override
+    public boolean match(String regex)
+    {
+        //Reuse the matcher while the regex doesn't change
+        Pattern pattern = grammar.compile(regex);
+        if(matcher == null || matcher.pattern() != pattern)
+        {
+            matcher = pattern.matcher(input);
+        }
+
+        return match(matcher);
+    }
+
+    /**
+     * Return the head to the start of the text.
+     *
+     * @throws IllegalStateException If the start of the text is no
+     *                               longer in the window, and the source
+     *                               is not a {@link CharBuffer}
+     */
+    @Override
+    public void reset()
+    {
+        if(windowStart == 0)
+        {
+            head = 0;
+            return;
+        }
+        else if(!(source instanceof CharBuffer))
+        {
+            throw new IllegalStateException("The start of the text is no longer in the window");
+        }
+
+        //Read the buffer again
+        ((CharBuffer) source).position(sourceStart);
+        windowStart = 0;
+        windowLength = 0;
+        isEndOfText = false;
+        head = 0;
+        updateInput();
+    }
+
+    @Override
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+        this.hasDeadline = true;
+        updateInput();
+    }
+
+    /**
+     * The text is not kept in memory.
+     *
+     * @return null
+     */
+    @Override
+    public String getText()
+    {
+        return null;
+    }
+
+    @Override
+    public int getHead()
+    {
+        return head;
+    }
+
+    /**
+     * Check if there is a character at the head,
+     * after reading more characters if needed.
+     *
+     * @return False at the end of the text
+     */
+    private boolean hasNextChar()
+    {
+        while(head - windowStart >= windowLength && !isEndOfText)
+        {
+            readMore();
+        }
+
+        return head - windowStart < windowLength;
+    }
+
+    /**
+     * Check if the text at the head of the reader
+     * matches the pattern of the given matcher. </br>
+     * If the regex reached the end of the window, more
+     * characters are read and the text is matched again.
+     *
+     * @param matcher A matcher over the window
+     * @return True if there is a match, false otherwise
+     */
+    private boolean match(Matcher matcher)
+    {
+        while(true)
+        {
+            matcher.reset(input);
+            matcher.region(head - windowStart, windowLength);
+            boolean isMatch = matcher.lookingAt();
+            if(!matcher.hitEnd() || isEndOfText)
+            {
+                return isMatch;
+            }
+
+            readMore();
+        }
+    }
+
+    /**
+     * Move the head of the reader to the first occurance,
+     * in the text, of the pattern of the matcher (to its
+     * start or its end). </br>
+     * If the regex reached the end of the window, more
+     * characters are read and the text is searched again.
+     * </p>
+     * If not match is found, the head doesn't move
+     * and this returns -1.
+     *
+     * @param matcher A matcher over the window
+     * @param isAfter True to move after the occurance, false to move to its start
+     * @return The new position of the head, or -1
+     */
+    private int moveToFirst(Matcher matcher, boolean isAfter)
+    {
+        while(true)
+        {
+            matcher.reset(input);
+            boolean isFound = matcher.find(head - windowStart);
+            if(!matcher.hitEnd() || isEndOfText)
+            {
+                if(!isFound) return -1;
+
+                head = windowStart + (isAfter ? matcher.end() : matcher.start());
+                return head;
+            }
+
+            readMore();
+        }
+    }
+
+    /**
+     * Read more characters of the text into the window. </br>
+     * When the window is full, the characters before the head
+     * are dropped, or the window grows if there are none.
+     */
+    private void readMore()
+    {
+        if(windowLength == window.length)
+        {
+            int dropped = head - windowStart;
+            if(dropped > 0)
+            {
+                System.arraycopy(window, dropped, window, 0, windowLength - dropped);
+                windowStart = head;
+                windowLength -= dropped;
+            }
+            else if(window.length < maxWindowSize)
+            {
+                char[] larger = new char[(int) Math.min((long) window.length * 2, maxWindowSize)];
+                System.arraycopy(window, 0, larger, 0, windowLength);
+                window = larger;
+            }
+            else
+            {
+                throw new BudgetExceededException("window of " + maxWindowSize + " characters exceeded");
+            }
+        }
+
+        try
+        {
+            int read = source.read(CharBuffer.wrap(window, windowLength, window.length - windowLength));
+            if(read == -1)
+            {
+                isEndOfText = true;
+            }
+            else
+            {
+                windowLength += read;
+            }
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        updateInput();
+    }
+
+    /**
+     * Give the current window to the regex.
+     */
+    private void updateInput()
+    {
+        chars = CharBuffer.wrap(window, 0, windowLength);
+        input = hasDeadline ? new DeadlineCharSequence(chars, deadline) : chars;
+    }
+}
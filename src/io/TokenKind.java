@@ -0,0 +1,117 @@
+package io;
+
+import java.util.Arrays;
+
+/**
+ * The kind of a token read by a {@link Tokenizer}
+ * (see {@link Tokenizer#nextToken()}).
+ * </br>
+ * The kind is found from the first characters of the token,
+ * without regex and without creating the token.
+ */
+public enum TokenKind
+{
+    NEWLINE,                //\n
+    SEPARATOR,              //One of ;=[]{}()
+    STRING,                 //"..."
+    CHAR,                   //'...'
+    LINE_COMMENT,           //"//" up to the end of the line
+    BLOCK_COMMENT,          ///* ... */
+    KEYWORD,                //A java keyword
+    IDENT;                  //Any other word (identifiers, numbers, operators, ...)
+
+    //The java keywords, by length
+    private static final String[][] KEYWORDS = new String[13][];
+    static {
+        String[] keywords = {"abstract", "assert", "boolean", "break", "byte", "case", "catch", "char",
+                "class", "const", "continue", "default", "do", "double", "else", "enum", "extends",
+                "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof",
+                "int", "interface", "long", "native", "new", "package", "private", "protected", "public",
+                "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+                "throw", "throws", "transient", "try", "void", "volatile", "while"};
+
+        for(int length = 0; length < KEYWORDS.length; length++)
+        {
+            int size = length;
+            KEYWORDS[length] = Arrays.stream(keywords)
+                    .filter(keyword -> keyword.length() == size)
+                    .toArray(String[]::new);
+        }
+    }
+
+    /**
+     * Return the kind of a token.
+     *
+     * @param text The text of the token
+     * @param start Index of the first character of the token
+     * @param end Index after the last character of the token
+     * @return The kind of the token
+     */
+    public static TokenKind of(CharSequence text, int start, int end)
+    {
+        int length = end - start;
+        if(length == 0)
+        {
+            return IDENT;
+        }
+
+        char first = text.charAt(start);
+        char second = length > 1 ? text.charAt(start + 1) : '\0';
+        switch(first)
+        {
+            case '\n':
+                return length == 1 ? NEWLINE : IDENT;
+            case ';': case '=': case '[': case ']':
+            case '{': case '}': case '(': case ')':
+                return length == 1 ? SEPARATOR : IDENT;
+            case '"':
+                return STRING;
+            case '\'':
+                return CHAR;
+            case '/':
+                if(second == '/') return LINE_COMMENT;
+                if(second == '*') return BLOCK_COMMENT;
+                return IDENT;
+            default:
+                return isKeyword(text, start, end) ? KEYWORD : IDENT;
+        }
+    }
+
+    /**
+     * Check if a token is a java keyword.
+     */
+    private static boolean isKeyword(CharSequence text, int start, int end)
+    {
+        int length = end - start;
+        if(length >= KEYWORDS.length)
+        {
+            return false;
+        }
+
+        for(String keyword : KEYWORDS[length])
+        {
+            if(regionEquals(text, start, keyword))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if the text contains the word at the given index.
+     */
+    private static boolean regionEquals(CharSequence text, int start, String word)
+    {
+        for(int i = 0; i < word.length(); i++)
+        {
+            if(text.charAt(start + i) != word.charAt(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
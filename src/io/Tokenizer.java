@@ -0,0 +1,123 @@
+package io;
+
+/**
+ * A reader that goes through a text by separating
+ * it into words.
+ * </br>
+ * Implemented by {@link WordReader} (regex based),
+ * {@link StreamingWordReader} (regex based, over a stream),
+ * {@link JavaLexer} (character state machine) and
+ * {@link StreamingJavaLexer} (character state machine, over a stream).
+ * <p/>
+ * The words can be read as strings (see {@link #readNexWord()}), or
+ * through the token cursor (see {@link #nextToken()}) that gives the
+ * offsets and the kind of each word, without creating it.
+ */
+public interface Tokenizer
+{
+    /**
+     * Look at the next character. <br/>
+     * Returns \0 if at the end of the text.
+     *
+     * @return A character
+     */
+    char peekChar();
+
+    /**
+     * Read the next word in the text and move the head
+     * of the reader to the end of the word.
+     * <p/>
+     * Return null if at the end of the text.
+     *
+     * @return A word, as a String.
+     */
+    String readNexWord();
+
+    /**
+     * Move the head of the reader to the end of the next
+     * word, like {@link #readNexWord()}, without creating
+     * the word. </br>
+     * The word is then the current token: see {@link #getTokenStart()},
+     * {@link #getTokenEnd()} and {@link #getTokenChar(int)}.
+     * <p/>
+     * Return null if at the end of the text.
+     *
+     * @return The kind of the token
+     */
+    TokenKind nextToken();
+
+    /**
+     * @return Index in the text of the first character of the current token
+     */
+    int getTokenStart();
+
+    /**
+     * @return Index in the text after the last character of the current token
+     */
+    int getTokenEnd();
+
+    /**
+     * Return a character of the current token.
+     *
+     * @param index Index of the character in the token
+     * @return The character
+     */
+    char getTokenChar(int index);
+
+    /**
+     * Check if the current token is the given word,
+     * without creating the token.
+     *
+     * @param word The word
+     * @return True if the current token is the word
+     */
+    default boolean isToken(String word)
+    {
+        if(getTokenEnd() - getTokenStart() != word.length())
+        {
+            return false;
+        }
+
+        for(int i = 0; i < word.length(); i++)
+        {
+            if(getTokenChar(i) != word.charAt(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if the text at the head of the reader
+     * matches the given regex. </br>
+     * The entire text does not have to match the regex.
+     *
+     * @param regex The regex to match
+     * @return True if there is a match, false otherwise
+     */
+    boolean match(String regex);
+
+    /**
+     * Return the head to the start of the text.
+     */
+    void reset();
+
+    /**
+     * Limit the time spent matching regex on the text. </br>
+     * After the deadline, the regex matches throw a
+     * {@link BudgetExceededException}.
+     *
+     * @param deadline The deadline, as given by {@link System#nanoTime()}
+     */
+    void setDeadline(long deadline);
+
+    /**
+     * @return The text, or null if it is not kept in memory
+     *         (see {@link StreamingWordReader})
+     */
+    String getText();
+
+    int getHead();
+}
@@ -0,0 +1,155 @@
+package io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The grammar used to separate a text into words, with
+ * all its regex already compiled.
+ * </br>
+ * A grammar is immutable and thread-safe: it should be
+ * created once and shared by every reader.
+ * <p/>
+ * The grammar also keeps a cache of the other regex compiled
+ * through it (see {@link #compile(String)}).
+ */
+public final class WordGrammar
+{
+    public static final String DEFAULT_NEW_LINE = "\n";
+    public static final String DEFAULT_END_OF_FILE = "\\z";
+
+    private final Pattern whiteSpaces;
+    private final Pattern wordSeparators;
+    private final Pattern[] delimiterStarts;
+    private final Pattern[] delimiterEnds;
+
+    private final ConcurrentHashMap<String, Pattern> patterns
+            = new ConcurrentHashMap<>();            //Cache of compiled regex
+
+    public WordGrammar(String whiteSpaces, String... specialWords)
+    {
+        this(whiteSpaces, null, specialWords);
+    }
+
+    /**
+     * @param whiteSpaces A regex that matches whitespaces
+     * @param delimiters A map of delimiters (regex of the start -> regex of the end), can be null
+     * @param specialWords Array of regex that each match a special word
+     */
+    public WordGrammar(String whiteSpaces, Map<String, String> delimiters, String... specialWords)
+    {
+        this.whiteSpaces = compile(whiteSpaces);
+        this.wordSeparators = compile(buildWordSeparators(whiteSpaces, delimiters, specialWords));
+
+        int size = delimiters == null ? 0 : delimiters.size();
+        delimiterStarts = new Pattern[size];
+        delimiterEnds = new Pattern[size];
+
+        if(delimiters != null)
+        {
+            int i = 0;
+            for(Map.Entry<String, String> delimiter : delimiters.entrySet())
+            {
+                delimiterStarts[i] = compile(delimiter.getKey());
+                delimiterEnds[i] = compile(delimiter.getValue());
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Compile a regex. </br>
+     * The pattern is compiled only once, the following
+     * calls return the same pattern.
+     *
+     * @param regex The regex to compile
+     * @return The compiled regex
+     */
+    public Pattern compile(String regex)
+    {
+        return patterns.computeIfAbsent(regex, Pattern::compile);
+    }
+
+    public Pattern getWhiteSpaces()
+    {
+        return whiteSpaces;
+    }
+
+    public Pattern getWordSeparators()
+    {
+        return wordSeparators;
+    }
+
+    public int getDelimiterCount()
+    {
+        return delimiterStarts.length;
+    }
+
+    public Pattern getDelimiterStart(int i)
+    {
+        return delimiterStarts[i];
+    }
+
+    public Pattern getDelimiterEnd(int i)
+    {
+        return delimiterEnds[i];
+    }
+
+    /**
+     * Build a regex for the all the word separators. </br>
+     * The regex is build by combining default special
+     * character (like \n), whitespaces, delimiters,
+     * and the special words given by the user.
+     *
+     * @param whiteSpaces A regex that matches whitespaces
+     * @param delimiters A map of delimiters
+     * @param specialWords Array of regex that each match a special word
+     * @return A regex matching all type of word separator
+     */
+    private static String buildWordSeparators(String whiteSpaces, Map<String, String> delimiters,
+                                              String... specialWords)
+    {
+        StringBuilder wordSeparatorBuilder = new StringBuilder();
+
+        //Add default newline and end-of-line to word separators
+        wordSeparatorBuilder.append(DEFAULT_NEW_LINE);
+        wordSeparatorBuilder.append("|").append(DEFAULT_END_OF_FILE);
+
+        //Add white spaces to word separators
+        if(whiteSpaces != null
+                && !whiteSpaces.isEmpty()) {
+            wordSeparatorBuilder.append("|").append(whiteSpaces);
+        }
+
+        //Add the delimiters
+        if(delimiters != null)
+        {
+            for(Map.Entry<String, String> delimiter : delimiters.entrySet())
+            {
+                //Add starting delimiter
+                wordSeparatorBuilder.append("|").append(delimiter.getKey());
+
+                //Add ending delimiter (only if different from starting)
+                if(!delimiter.getValue().equals(delimiter.getKey()))
+                {
+                    wordSeparatorBuilder.append("|").append(delimiter.getValue());
+                }
+            }
+        }
+
+        //Add the custom word separators
+        if(specialWords != null)
+        {
+            for(String specialWord : specialWords)
+            {
+                if(!specialWord.isEmpty())
+                {
+                    wordSeparatorBuilder.append("|").append(specialWord);
+                }
+            }
+        }
+
+        return wordSeparatorBuilder.toString();
+    }
+}
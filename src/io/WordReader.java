@@ -1,7 +1,6 @@
 package io;
 
 import java.util.HashMap;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,37 +9,59 @@ import java.util.regex.Pattern;
  * separating it into words.
  * </br>
  * The separation is done using regular expression (regex)
- * specified by the user.
+ * specified by the user, compiled once in a {@link WordGrammar}.
  */
-public class WordReader
+public class WordReader implements Tokenizer
 {
-    public static final String DEFAULT_NEW_LINE = "\n";
-    public static final String DEFAULT_END_OF_FILE = "\\z";
+    public static final String DEFAULT_NEW_LINE = WordGrammar.DEFAULT_NEW_LINE;
+    public static final String DEFAULT_END_OF_FILE = WordGrammar.DEFAULT_END_OF_FILE;
 
-    private String whiteSpaces;
-    private String wordSeparators;
-    private HashMap<String, String> delimiters;
+    private final WordGrammar grammar;
+
+    //Matchers of the grammar, reused for every word
+    private final Matcher whiteSpaces;
+    private final Matcher wordSeparators;
+    private final Matcher[] delimiterStarts;
+    private final Matcher[] delimiterEnds;
+    private Matcher matcher;        //Matcher of the last regex of match(), reused
 
     private String text;            //The text to read, as a String
+    private CharSequence input;     //The text given to the regex (with a deadline or not)
     private int head;               //The head of the reader, indicate the current character to read
+    private int tokenStart = 0;     //Offsets of the current token
+    private int tokenEnd = 0;
 
     public WordReader(String text, String whiteSpaces, String... specialWords)
     {
-        this.whiteSpaces = whiteSpaces;
-        this.wordSeparators = buildWordSeparators(whiteSpaces, null, specialWords);
-
-        this.text = text;
-        head = 0;
+        this(text, new WordGrammar(whiteSpaces, specialWords));
     }
 
     public WordReader(String text, String whiteSpaces, HashMap<String, String> delimiters,
                       String... specialWords)
     {
-        this.whiteSpaces = whiteSpaces;
-        this.delimiters = delimiters;
-        this.wordSeparators = buildWordSeparators(whiteSpaces, delimiters, specialWords);
+        this(text, new WordGrammar(whiteSpaces, delimiters, specialWords));
+    }
+
+    /**
+     * @param text The text to read
+     * @param grammar The (shared) grammar used to separate the text
+     */
+    public WordReader(String text, WordGrammar grammar)
+    {
+        this.grammar = grammar;
+        this.whiteSpaces = grammar.getWhiteSpaces().matcher(text);
+        this.wordSeparators = grammar.getWordSeparators().matcher(text);
+
+        delimiterStarts = new Matcher[grammar.getDelimiterCount()];
+        delimiterEnds = new Matcher[grammar.getDelimiterCount()];
+        for(int i = 0; i < delimiterStarts.length; i++)
+        {
+            delimiterStarts[i] = grammar.getDelimiterStart(i).matcher(text);
+            delimiterEnds[i] = grammar.getDelimiterEnd(i).matcher(text);
+        }
 
         this.text = text;
+        this.input = text;
         head = 0;
     }
 
@@ -50,6 +71,7 @@ public class WordReader
      *
      * @return A character
      */
+    @Override
     public char peekChar()
     {
         if(head >= text.length())
@@ -93,9 +115,19 @@ public class WordReader
      *
      * @return A word, as a String.
      */
+    @Override
     public String readNexWord()
     {
-        String word = null;
+        if(nextToken() == null) return null;
+
+        return text.substring(tokenStart, tokenEnd);
+    }
+
+    @Override
+    public TokenKind nextToken()
+    {
+        int wordStart = -1;
+        int wordEnd = -1;
 
         //Return null at the end of the text
         if(head >= text.length()) return null;
@@ -107,49 +139,68 @@ public class WordReader
         }
 
         //Check delimiters
-        for(Map.Entry<String, String> delimiter : delimiters.entrySet())
+        for(int i = 0; i < delimiterStarts.length; i++)
         {
-            if(match(delimiter.getKey()))
+            if(match(delimiterStarts[i]))
             {
                 //Extract the word
-                int wordStart = head;
-                int wordEnd = moveAfterFirst(delimiter.getValue());
-                word = text.substring(wordStart, wordEnd);
+                wordStart = head;
+                wordEnd = moveAfterFirst(delimiterEnds[i]);
+                if(wordEnd == -1)
+                {
+                    throw new IllegalStateException("Unterminated delimiter at " + head);
+                }
 
                 break;              //Stop the loop
             }
         }
 
-        if(word == null)            //If word isn't null, then we matched a delimiter
+        if(wordStart == -1)         //If the word started, then we matched a delimiter
         {
             //Check if the word start with a separator
             if (match(wordSeparators))
             {
                 //Treat the separator as a word
-                int wordStart = head;
-                int wordEnd = moveAfterFirst(wordSeparators);       //should always be > 0
-
-                word = text.substring(wordStart, wordEnd);
+                wordStart = head;
+                wordEnd = moveAfterFirst(wordSeparators);       //should always be > 0
             }
             //Read the word
             else
             {
-                int wordStart = head;
+                wordStart = head;
 
                 //Move to the next word separator
-                int wordEnd = moveToFirst(wordSeparators);
+                wordEnd = moveToFirst(wordSeparators);
 
                 //No word separators -> probably end-of-file
                 if (wordEnd == -1)
                 {
                     wordEnd = text.length();
                 }
-
-                word = text.substring(wordStart, wordEnd);
             }
         }
 
-        return word;
+        tokenStart = wordStart;
+        tokenEnd = wordEnd;
+        return TokenKind.of(text, wordStart, wordEnd);
+    }
+
+    @Override
+    public int getTokenStart()
+    {
+        return tokenStart;
+    }
+
+    @Override
+    public int getTokenEnd()
+    {
+        return tokenEnd;
+    }
+
+    @Override
+    public char getTokenChar(int index)
+    {
+        return text.charAt(tokenStart + index);
     }
 
     /**
@@ -162,87 +213,55 @@ public class WordReader
      * @param regex The regex to match
      * @return True if there is a match, false otherwise
      */
+    @Override
     public boolean match(String regex)
     {
-        String str = text.substring(head);
-        return match(str, regex);
+        //Reuse the matcher while the regex doesn't change
+        Pattern pattern = grammar.compile(regex);
+        if(matcher == null || matcher.pattern() != pattern)
+        {
+            matcher = pattern.matcher(input);
+        }
+
+        return match(matcher);
     }
 
     /**
      * Return the head to the start of the text.
      */
+    @Override
     public void reset()
     {
         head = 0;
     }
 
+    @Override
+    public void setDeadline(long deadline)
+    {
+        input = new DeadlineCharSequence(text, deadline);
+        matcher = null;
+
+        whiteSpaces.reset(input);
+        wordSeparators.reset(input);
+        for(int i = 0; i < delimiterStarts.length; i++)
+        {
+            delimiterStarts[i].reset(input);
+            delimiterEnds[i].reset(input);
+        }
+    }
+
+    @Override
     public String getText()
     {
         return text;
     }
 
+    @Override
     public int getHead()
     {
         return head;
     }
 
-    /**
-     * Build a regex for the all the word separators. </br>
-     * The regex is build by combining default special
-     * character (like \n), whitespaces, delimiters,
-     * and the special words given by the user.
-     *
-     * @param whiteSpaces A regex that matches whitespaces
-     * @param delimiters A map of delimiters
-     * @param specialWords Array of regex that each match a special word
-     * @return A regex matching all type of word separator
-     */
-    private String buildWordSeparators(String whiteSpaces, HashMap<String, String> delimiters,
-                                       String... specialWords)
-    {
-        StringBuilder wordSeparatorBuilder = new StringBuilder();
-
-        //Add default newline and end-of-line to word separators
-        wordSeparatorBuilder.append(DEFAULT_NEW_LINE);
-        wordSeparatorBuilder.append("|").append(DEFAULT_END_OF_FILE);
-
-        //Add white spaces to word separators
-        if(whiteSpaces != null
-                && !whiteSpaces.isEmpty()) {
-            wordSeparatorBuilder.append("|").append(whiteSpaces);
-        }
-
-        //Add the delimiters
-        if(delimiters != null)
-        {
-            for(Map.Entry<String, String> delimiter : delimiters.entrySet())
-            {
-                //Add starting delimiter
-                wordSeparatorBuilder.append("|").append(delimiter.getKey());
-
-                //Add ending delimiter (only if different from starting)
-                if(!delimiter.getValue().equals(delimiter.getKey()))
-                {
-                    wordSeparatorBuilder.append("|").append(delimiter.getValue());
-                }
-            }
-        }
-
-        //Add the custom word separators
-        if(specialWords != null)
-        {
-            for(String specialWord : specialWords)
-            {
-                if(!specialWord.isEmpty())
-                {
-                    wordSeparatorBuilder.append("|").append(specialWord);
-                }
-            }
-        }
-
-        return wordSeparatorBuilder.toString();
-    }
-
     /**
      * Move the head of the reader to the first occurance,
      * in the text, of the pattern define by regex.
@@ -250,13 +269,11 @@ public class WordReader
      * If not match is found, the head doesn't move
      * and this returns -1.
      *
-     * @param regex The pattern to search
+     * @param matcher The matcher of the pattern to search
      * @return The new position of the head, or -1
      */
-    private int moveToFirst(String regex)
+    private int moveToFirst(Matcher matcher)
     {
-        Matcher matcher = Pattern.compile(regex).matcher(text);     //Create a matcher
-
         if(matcher.find(head))                                      //Search for the first occurance of regex
         {
             int index = matcher.start();                            //Get its index
@@ -275,13 +292,11 @@ public class WordReader
      * If not match is found, the head doesn't move
      * and this returns -1.
      *
-     * @param regex The pattern to search
+     * @param matcher The matcher of the pattern to search
      * @return The new position of the head, or -1
      */
-    private int moveAfterFirst(String regex)
+    private int moveAfterFirst(Matcher matcher)
     {
-        Matcher matcher = Pattern.compile(regex).matcher(text);     //Create a matcher
-
         if(matcher.find(head))                                      //Search for the first occurance of regex
         {
             int index = matcher.end();                              //Get the index of the next character
@@ -293,17 +308,17 @@ public class WordReader
     }
 
     /**
-     * Check if the given text matches the given regex. </br>
-     * There is a match if the text starts with an
-     * substring that matches the regex. </br>
-     * The entire text does not have to match the regex.
+     * Check if the text at the head of the reader
+     * matches the pattern of the given matcher. </br>
+     * The text is matched in place (from the head
+     * to the end), without being copied.
      *
-     * @param regex The regex to match
+     * @param matcher A matcher over the text
      * @return True if there is a match, false otherwise
      */
-    private boolean match(String text, String regex)
+    private boolean match(Matcher matcher)
     {
-        Matcher matcher = Pattern.compile(regex).matcher(text);     //Create a matcher
+        matcher.region(head, text.length());
         return matcher.lookingAt();
     }
 }